@@ -0,0 +1,154 @@
+package com.talview.sqlitepersistentqueue.benchmarks;
+
+import com.talview.sqlitepersistentqueue.QueueObjectConverter;
+import com.talview.sqlitepersistentqueue.SQLitePersistentBlockingQueue;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueConfig;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueJdbcStorage;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueSchema;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded blocking queue with {@value #CAPACITY} slots, shared by 1, 2 or 4 producers and as
+ * many consumers, so that producers keep blocking on a full queue and consumers on an empty one.
+ * Each group measures how its throughput scales as the producer and consumer locks are contended.
+ * <p>
+ * Producers and consumers wait at most {@value #TIMEOUT_MILLIS} ms, so that the threads still
+ * blocked when an iteration ends return rather than hang the run.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class BlockingQueueBenchmark {
+    private static final String TABLE_NAME = "benchmark";
+    private static final int CAPACITY = 16;
+    private static final long TIMEOUT_MILLIS = 10;
+
+    private static final QueueObjectConverter<String> TEXT = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    @Param({"64", "1024"})
+    public int payloadSize;
+
+    /**
+     * {@code platform} opens the database as Android would by default, {@code throughput} with
+     * the {@link SQLiteQueueConfig.Builder} defaults: WAL and {@code synchronous = NORMAL}.
+     */
+    @Param({"platform", "throughput"})
+    public String profile;
+
+    private SQLitePersistentBlockingQueue<String> mQueue;
+    private File mDbFile;
+    private String mPayload;
+
+    @Setup(Level.Trial)
+    public void openQueue() throws IOException, SQLException {
+        mDbFile = File.createTempFile("benchmark", ".db");
+        SQLiteQueueConfig config = "throughput".equals(profile)
+                ? new SQLiteQueueConfig.Builder().build()
+                : SQLiteQueueConfig.PLATFORM_DEFAULTS;
+        SQLiteQueueJdbcStorage storage = new SQLiteQueueJdbcStorage(
+                DriverManager.getConnection("jdbc:sqlite:" + mDbFile.getPath()), config);
+        SQLiteQueueSchema.createQueueTable(storage, TABLE_NAME, false);
+        mQueue = new SQLitePersistentBlockingQueue<>(TEXT,
+                new SQLiteQueueTableManager(storage, TABLE_NAME, false), CAPACITY);
+        StringBuilder sb = new StringBuilder(payloadSize);
+        while (sb.length() < payloadSize) {
+            sb.append('x');
+        }
+        mPayload = sb.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void closeQueue() throws IOException {
+        mQueue.close();
+        String path = mDbFile.getPath();
+        for (String suffix : Arrays.asList("", "-wal", "-shm", "-journal")) {
+            new File(path + suffix).delete();
+        }
+    }
+
+    @Benchmark
+    @Group("pairs1")
+    @GroupThreads(1)
+    public boolean put1() throws InterruptedException {
+        return put();
+    }
+
+    @Benchmark
+    @Group("pairs1")
+    @GroupThreads(1)
+    public String take1() throws InterruptedException {
+        return take();
+    }
+
+    @Benchmark
+    @Group("pairs2")
+    @GroupThreads(2)
+    public boolean put2() throws InterruptedException {
+        return put();
+    }
+
+    @Benchmark
+    @Group("pairs2")
+    @GroupThreads(2)
+    public String take2() throws InterruptedException {
+        return take();
+    }
+
+    @Benchmark
+    @Group("pairs4")
+    @GroupThreads(4)
+    public boolean put4() throws InterruptedException {
+        return put();
+    }
+
+    @Benchmark
+    @Group("pairs4")
+    @GroupThreads(4)
+    public String take4() throws InterruptedException {
+        return take();
+    }
+
+    private boolean put() throws InterruptedException {
+        return mQueue.offer(mPayload, TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private String take() throws InterruptedException {
+        return mQueue.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,46 @@
+package com.talview.sqlitepersistentqueue.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code poll()} at a constant depth. The polled element is offered back outside the measured
+ * section, so only the dequeue is timed.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DequeueBenchmark extends QueueState {
+    private String mPayload;
+
+    @Setup(Level.Trial)
+    public void preparePayload() {
+        mPayload = element(depth);
+    }
+
+    /**
+     * A single offer costs tens of microseconds in SQLite, far above the per-invocation overhead
+     * JMH warns about for this level.
+     */
+    @Setup(Level.Invocation)
+    public void refill() {
+        if (queue.size() < depth)
+            queue.offer(mPayload);
+    }
+
+    @Benchmark
+    public String poll() {
+        return queue.poll();
+    }
+}
@@ -0,0 +1,58 @@
+package com.talview.sqlitepersistentqueue.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code offer()} of one element and {@code addAll()} of {@value #BATCH_SIZE}, reported per
+ * element. The queue is trimmed back to its depth after every iteration.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnqueueBenchmark extends QueueState {
+    private static final int BATCH_SIZE = 100;
+
+    private String mPayload;
+    private List<String> mBatch;
+
+    @Setup(Level.Trial)
+    public void preparePayloads() {
+        mPayload = element(depth);
+        mBatch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mBatch.add(element(depth + i));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void restoreDepth() {
+        trimToDepth();
+    }
+
+    @Benchmark
+    public boolean offer() {
+        return queue.offer(mPayload);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public boolean addAll() {
+        return queue.addAll(mBatch);
+    }
+}
@@ -0,0 +1,31 @@
+package com.talview.sqlitepersistentqueue.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One full pass of the queue's iterator, which reads the table a page at a time. Divide by the
+ * depth for the cost per element.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IterationBenchmark extends QueueState {
+    @Benchmark
+    public int iterate() {
+        int length = 0;
+        for (String element : queue) {
+            length += element.length();
+        }
+        return length;
+    }
+}
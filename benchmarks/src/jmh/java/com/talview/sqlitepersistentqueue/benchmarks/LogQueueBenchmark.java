@@ -0,0 +1,120 @@
+package com.talview.sqlitepersistentqueue.benchmarks;
+
+import com.talview.sqlitepersistentqueue.QueueObjectConverter;
+import com.talview.sqlitepersistentqueue.SQLitePersistentLogQueue;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueLogConfig;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The segmented log queue, for comparison with {@link EnqueueBenchmark} and
+ * {@link DequeueBenchmark}: {@code offer()} of one element, {@code addAll()} of
+ * {@value #BATCH_SIZE}, and an {@code offer()} followed by a {@code poll()}. The queue is cleared
+ * after every iteration.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogQueueBenchmark {
+    private static final int BATCH_SIZE = 100;
+
+    private static final QueueObjectConverter<String> TEXT = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    @Param({"64", "1024"})
+    public int payloadSize;
+
+    /**
+     * Whether every append and head move is synced to disk, like {@code synchronous = FULL}.
+     */
+    @Param({"false", "true"})
+    public boolean syncOnAppend;
+
+    private SQLitePersistentLogQueue<String> mQueue;
+    private File mDirectory;
+    private String mPayload;
+    private List<String> mBatch;
+
+    @Setup(Level.Trial)
+    public void openQueue() throws IOException {
+        mDirectory = File.createTempFile("benchmark", ".log");
+        mDirectory.delete();
+        mQueue = new SQLitePersistentLogQueue<>(mDirectory, TEXT, new SQLiteQueueLogConfig.Builder()
+                .setSyncOnAppend(syncOnAppend)
+                .build());
+        StringBuilder sb = new StringBuilder(payloadSize);
+        while (sb.length() < payloadSize) {
+            sb.append('x');
+        }
+        mPayload = sb.toString();
+        mBatch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            mBatch.add(mPayload);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearQueue() {
+        mQueue.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void closeQueue() throws IOException {
+        mQueue.close();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    @Benchmark
+    public boolean offer() {
+        return mQueue.offer(mPayload);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public boolean addAll() {
+        return mQueue.addAll(mBatch);
+    }
+
+    @Benchmark
+    public String offerAndPoll() {
+        mQueue.offer(mPayload);
+        return mQueue.poll();
+    }
+}
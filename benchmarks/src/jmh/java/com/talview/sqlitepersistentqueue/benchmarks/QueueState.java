@@ -0,0 +1,135 @@
+package com.talview.sqlitepersistentqueue.benchmarks;
+
+import com.talview.sqlitepersistentqueue.QueueObjectBinaryConverter;
+import com.talview.sqlitepersistentqueue.QueueObjectConverter;
+import com.talview.sqlitepersistentqueue.SQLitePersistentQueue;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueConfig;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueJdbcStorage;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueSchema;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A queue in a fresh database file, holding {@link #depth} distinct elements of
+ * {@link #payloadSize} characters when a trial starts. The benchmarks extend it.
+ */
+@State(Scope.Benchmark)
+public class QueueState {
+    static final String TABLE_NAME = "benchmark";
+    private static final int FILL_BATCH_SIZE = 10000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final QueueObjectConverter<String> TEXT = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    private static final QueueObjectBinaryConverter<String> BINARY = new QueueObjectBinaryConverter<String>() {
+        @Override
+        public String deserialize(byte[] bytes, int offset, int length) {
+            return new String(bytes, offset, length, UTF_8);
+        }
+
+        @Override
+        public byte[] serialize(String queueObject) {
+            return queueObject.getBytes(UTF_8);
+        }
+    };
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int depth;
+
+    @Param({"64", "1024"})
+    public int payloadSize;
+
+    /**
+     * {@code text} stores elements through a {@link QueueObjectConverter} in a TEXT column,
+     * {@code binary} through a {@link QueueObjectBinaryConverter} in a BLOB column.
+     */
+    @Param({"text", "binary"})
+    public String converter;
+
+    /**
+     * {@code platform} opens the database as Android would by default, {@code throughput} with
+     * the {@link SQLiteQueueConfig.Builder} defaults: WAL and {@code synchronous = NORMAL}.
+     */
+    @Param({"platform", "throughput"})
+    public String profile;
+
+    SQLitePersistentQueue<String> queue;
+    private File mDbFile;
+
+    @Setup(Level.Trial)
+    public void openQueue() throws IOException, SQLException {
+        mDbFile = File.createTempFile("benchmark", ".db");
+        SQLiteQueueConfig config = "throughput".equals(profile)
+                ? new SQLiteQueueConfig.Builder().build()
+                : SQLiteQueueConfig.PLATFORM_DEFAULTS;
+        SQLiteQueueJdbcStorage storage = new SQLiteQueueJdbcStorage(
+                DriverManager.getConnection("jdbc:sqlite:" + mDbFile.getPath()), config);
+        boolean binary = "binary".equals(converter);
+        SQLiteQueueSchema.createQueueTable(storage, TABLE_NAME, binary);
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(storage, TABLE_NAME, binary);
+        queue = binary ? new SQLitePersistentQueue<>(BINARY, manager) : new SQLitePersistentQueue<>(TEXT, manager);
+        for (int i = 0; i < depth; i += FILL_BATCH_SIZE) {
+            List<String> batch = new ArrayList<>(FILL_BATCH_SIZE);
+            for (int j = i; j < Math.min(i + FILL_BATCH_SIZE, depth); j++) {
+                batch.add(element(j));
+            }
+            queue.addAll(batch);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeQueue() throws IOException {
+        queue.close();
+        String path = mDbFile.getPath();
+        for (String suffix : Arrays.asList("", "-wal", "-shm", "-journal")) {
+            new File(path + suffix).delete();
+        }
+    }
+
+    /**
+     * Returns the n-th distinct element: its index, padded to the payload size.
+     */
+    String element(int n) {
+        StringBuilder sb = new StringBuilder(payloadSize);
+        sb.append(n).append(':');
+        while (sb.length() < payloadSize) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Removes elements from the head until the queue is back at its initial depth.
+     */
+    void trimToDepth() {
+        int excess = queue.size() - depth;
+        while (excess > 0) {
+            excess -= queue.pollBatch(Math.min(excess, FILL_BATCH_SIZE)).size();
+        }
+    }
+}
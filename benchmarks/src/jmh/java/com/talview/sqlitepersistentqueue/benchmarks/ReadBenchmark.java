@@ -0,0 +1,48 @@
+package com.talview.sqlitepersistentqueue.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The operations that leave the queue unchanged: {@code peek()}, and {@code contains()} of an
+ * element in the middle of the queue and of one that is not in it.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadBenchmark extends QueueState {
+    private String mPresent;
+    private String mAbsent;
+
+    @Setup(Level.Trial)
+    public void prepareElements() {
+        mPresent = element(depth / 2);
+        mAbsent = element(depth);
+    }
+
+    @Benchmark
+    public String peek() {
+        return queue.peek();
+    }
+
+    @Benchmark
+    public boolean containsPresent() {
+        return queue.contains(mPresent);
+    }
+
+    @Benchmark
+    public boolean containsAbsent() {
+        return queue.contains(mAbsent);
+    }
+}
@@ -2,6 +2,8 @@ package com.talview.sqlitepersistentqueue;
 
 import org.junit.Test;
 
+import java.util.Collections;
+
 import static org.junit.Assert.*;
 
 public class SQLiteBusPublisherTest {
@@ -15,6 +17,16 @@ public class SQLiteBusPublisherTest {
         }
     }
 
+    @Test
+    public void publishAll_MustThrowForUnsupportedEventValue() throws Exception {
+        SQLiteBusPublisher<String> publisher = new SQLiteBusPublisher<>();
+        try {
+            publisher.publishAll(SQLiteBusPublisher.EVENT_CLEARED, Collections.singletonList("blah"));
+            fail("Must throw exception for un supported int event values");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
     @Test
     public void subscribe_MustNotSameSubscriberTwidce() throws Exception {
         SQLiteBusSubscriber<String> subscriber = new SQLiteBusSubscriber<String>() {
@@ -38,4 +50,32 @@ public class SQLiteBusPublisherTest {
         publisher.subscribe(subscriber);
         assertEquals(1, publisher.subsriberSize());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void publish_SubscriberMayUnsubscribeWhileBeingNotified() throws Exception {
+        final SQLiteBusPublisher<String> publisher = new SQLiteBusPublisher<>();
+        final int[] added = {0};
+        SQLiteBusSubscriber<String> subscriber = new SQLiteBusSubscriber<String>() {
+            @Override
+            public void onAdded(String object) {
+                ++added[0];
+                publisher.unsubscribe(this);
+            }
+
+            @Override
+            public void onRemoved(String object) {
+
+            }
+
+            @Override
+            public void onCleared() {
+
+            }
+        };
+        publisher.subscribe(subscriber);
+        publisher.publish(SQLiteBusPublisher.EVENT_ADDED, "blah");
+        publisher.publish(SQLiteBusPublisher.EVENT_ADDED, "blah");
+        assertEquals(1, added[0]);
+        assertFalse(publisher.hasSubscribers());
+    }
+}
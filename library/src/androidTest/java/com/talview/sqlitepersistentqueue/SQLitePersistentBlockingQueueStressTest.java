@@ -0,0 +1,126 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueDbHelper;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hammers a bounded blocking queue from several producer and consumer threads at once, checking
+ * that every element comes out exactly once. The small capacity keeps producers blocking on a
+ * full queue and consumers on an empty one. Throughput is measured by the
+ * {@code BlockingQueueBenchmark} in the benchmarks module instead.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SQLitePersistentBlockingQueueStressTest {
+    private static final int CAPACITY = 16;
+    private static final int ELEMENTS_PER_PRODUCER = 500;
+    private static final int[] THREAD_COUNTS = {1, 2, 4};
+
+    private QueueObjectConverter<String> mConverter = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    private SQLitePersistentBlockingQueue<String> queue;
+
+    @Before
+    public void setUp() {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        queue = new SQLitePersistentBlockingQueue<>(mConverter, manager, CAPACITY);
+        queue.clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.clear();
+        queue.close();
+    }
+
+    @Test
+    public void testProducersAndConsumers_deliverEveryElementExactlyOnce() throws InterruptedException {
+        for (int threads : THREAD_COUNTS) {
+            run(threads, threads);
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    /**
+     * Runs the producers and consumers to completion.
+     */
+    private void run(int producers, int consumers) throws InterruptedException {
+        final int total = producers * ELEMENTS_PER_PRODUCER;
+        final ConcurrentHashMap<String, Integer> received = new ConcurrentHashMap<>();
+        final AtomicInteger taken = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[producers + consumers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < ELEMENTS_PER_PRODUCER; i++) {
+                            queue.put(producer + ":" + i);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            });
+        }
+        for (int c = 0; c < consumers; c++) {
+            threads[producers + c] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (taken.get() < total) {
+                            String e = queue.poll(50, TimeUnit.MILLISECONDS);
+                            if (e == null)
+                                continue;
+                            Integer previous = received.put(e, 1);
+                            if (previous != null)
+                                throw new AssertionError("Received " + e + " twice");
+                            taken.incrementAndGet();
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.MINUTES.toMillis(2));
+        }
+        assertNull(failure.get());
+        assertEquals(total, taken.get());
+        assertEquals(total, received.size());
+    }
+}
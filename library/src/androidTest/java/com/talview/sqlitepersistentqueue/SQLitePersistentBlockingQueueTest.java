@@ -0,0 +1,191 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueDbHelper;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A test class for the sqlite persistent blocking queue.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SQLitePersistentBlockingQueueTest {
+    private static final int CAPACITY = 2;
+
+    private QueueObjectConverter<String> mConverter = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    private SQLitePersistentBlockingQueue<String> queue;
+
+    @Before
+    public void setUp() {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        queue = new SQLitePersistentBlockingQueue<>(mConverter, manager, CAPACITY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.clear();
+        queue.close();
+    }
+
+    @Test
+    public void testTake_BlocksUntilAnElementIsOffered() throws InterruptedException {
+        final AtomicReference<String> taken = new AtomicReference<>();
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    taken.set(queue.take());
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        consumer.start();
+        Thread.sleep(100);
+        assertTrue(consumer.isAlive());
+        queue.offer("value1");
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+        assertEquals("value1", taken.get());
+    }
+
+    @Test
+    public void testTake_WriteBehindProducer_DoesNotDeadlock() throws InterruptedException {
+        final int count = 200;
+        queue.setWriteBehindPolicy(new SQLiteQueueWriteBehindPolicy.Builder()
+                .setFlushInterval(1, TimeUnit.MILLISECONDS)
+                .setMaxPendingElements(1)
+                .build());
+        final AtomicInteger taken = new AtomicInteger();
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        queue.put("value" + i);
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        assertEquals("value" + i, queue.take());
+                        taken.incrementAndGet();
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        producer.start();
+        consumer.start();
+        producer.join(30000);
+        consumer.join(30000);
+        boolean stuck = producer.isAlive() || consumer.isAlive();
+        producer.interrupt();
+        consumer.interrupt();
+        assertFalse("Producer or consumer deadlocked", stuck);
+        assertEquals(count, taken.get());
+    }
+
+    @Test
+    public void testPollWithTimeout_emptyQueue_mustReturnNullAfterTimeout() throws InterruptedException {
+        long start = System.nanoTime();
+        assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void testOffer_fullQueue_mustReturnFalse() {
+        assertTrue(queue.offer("value1"));
+        assertTrue(queue.offer("value2"));
+        assertFalse(queue.offer("value3"));
+        assertEquals(0, queue.remainingCapacity());
+    }
+
+    @Test
+    public void testAdd_fullQueue_mustThrow() {
+        queue.add("value1");
+        queue.add("value2");
+        try {
+            queue.add("value3");
+            fail("Must throw when adding to a full queue");
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Test
+    public void testAddAll_beyondCapacity_mustThrowAndAddNothing() {
+        try {
+            queue.addAll(Arrays.asList("value1", "value2", "value3"));
+            fail("Must throw when the elements do not fit in the queue");
+        } catch (IllegalStateException ignored) {
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testPut_BlocksUntilSpaceIsFreed() throws InterruptedException {
+        queue.put("value1");
+        queue.put("value2");
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.put("value3");
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        producer.start();
+        Thread.sleep(100);
+        assertTrue(producer.isAlive());
+        assertEquals("value1", queue.poll());
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+        assertEquals(CAPACITY, queue.size());
+        assertEquals("value2", queue.take());
+        assertEquals("value3", queue.take());
+    }
+
+    @Test
+    public void testOffer_null_mustThrow() {
+        try {
+            queue.offer(null);
+            fail("Blocking queues must not accept null elements");
+        } catch (NullPointerException ignored) {
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A test class for the sqlite persistent delay queue.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SQLitePersistentDelayQueueTest {
+    private QueueObjectConverter<String> mConverter = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    private SQLitePersistentDelayQueue<String> queue;
+
+    @Before
+    public void setUp() {
+        queue = new SQLitePersistentDelayQueue<>(InstrumentationRegistry.getTargetContext(), mConverter);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.clear();
+        queue.close();
+    }
+
+    @Test
+    public void testPoll_SkipsRowsThatAreNotVisibleYet() {
+        queue.offerDelayed("later", 1, TimeUnit.HOURS);
+        queue.offer("now");
+        assertEquals(2, queue.size());
+        assertEquals("now", queue.poll());
+        assertNull(queue.poll());
+        assertEquals(1, queue.size());
+        assertEquals("later", queue.peek());
+    }
+
+    @Test
+    public void testPoll_ReturnsRowsInVisibilityOrder() {
+        long now = System.currentTimeMillis();
+        queue.offerAt("second", now - 10);
+        queue.offerAt("first", now - 20);
+        assertEquals("first", queue.poll());
+        assertEquals("second", queue.poll());
+    }
+
+    @Test
+    public void testTake_SleepsUntilTheEarliestRowIsVisible() throws InterruptedException {
+        long start = System.nanoTime();
+        queue.offerDelayed("value1", 100, TimeUnit.MILLISECONDS);
+        assertEquals("value1", queue.take());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void testTake_WakesUpForAnEarlierRowOfferedWhileWaiting() throws InterruptedException {
+        queue.offerDelayed("later", 1, TimeUnit.HOURS);
+        final AtomicReference<String> taken = new AtomicReference<>();
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    taken.set(queue.take());
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        consumer.start();
+        Thread.sleep(100);
+        assertTrue(consumer.isAlive());
+        queue.offer("now");
+        consumer.join(5000);
+        assertFalse(consumer.isAlive());
+        assertEquals("now", taken.get());
+    }
+
+    @Test
+    public void testPollWithTimeout_ReturnsNullWhenNothingBecomesVisible() throws InterruptedException {
+        queue.offerDelayed("later", 1, TimeUnit.HOURS);
+        assertNull(queue.poll(50, TimeUnit.MILLISECONDS));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testDrainTo_OnlyTransfersVisibleRows() {
+        queue.addAll(Arrays.asList("value1", "value2"));
+        queue.offerDelayed("later", 1, TimeUnit.HOURS);
+        List<String> drained = new ArrayList<>();
+        assertEquals(2, queue.drainTo(drained));
+        assertEquals(Arrays.asList("value1", "value2"), drained);
+        assertEquals(1, queue.size());
+    }
+}
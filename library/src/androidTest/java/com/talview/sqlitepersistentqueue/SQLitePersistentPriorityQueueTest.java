@@ -0,0 +1,145 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueDbHelper;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A test class for the sqlite persistent priority queue.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SQLitePersistentPriorityQueueTest {
+    private QueueObjectConverter<String> mConverter = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    /**
+     * Crash reports go first, everything else after them.
+     */
+    private QueueObjectPrioritizer<String> mPrioritizer = new QueueObjectPrioritizer<String>() {
+        @Override
+        public int getPriority(String queueObject) {
+            return queueObject.startsWith("crash") ? 0 : 10;
+        }
+    };
+
+    private SQLitePersistentPriorityQueue<String> queue;
+
+    @Before
+    public void setUp() {
+        queue = new SQLitePersistentPriorityQueue<>(InstrumentationRegistry.getTargetContext(),
+                mConverter, mPrioritizer);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.clear();
+        queue.close();
+    }
+
+    @Test
+    public void testPoll_ReturnsLowestPriorityFirstThenInsertionOrder() {
+        queue.offer("ping1");
+        queue.offer("crash1");
+        queue.offer("ping2");
+        queue.offer("crash2");
+        assertEquals("crash1", queue.peek());
+        assertEquals("crash1", queue.poll());
+        assertEquals("crash2", queue.poll());
+        assertEquals("ping1", queue.poll());
+        assertEquals("ping2", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testSetReadAheadSize_mustThrow() {
+        try {
+            queue.setReadAheadSize(10);
+            fail("Read-ahead must be rejected for priority queues");
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Test
+    public void testOfferWithPriority_OverridesThePrioritizer() {
+        queue.offer("crash1");
+        queue.offer("ping1", -1);
+        assertEquals("ping1", queue.poll());
+        assertEquals("crash1", queue.poll());
+    }
+
+    @Test
+    public void testAddAllAndPollBatch_FollowPriorityOrder() {
+        queue.addAll(Arrays.asList("ping1", "ping2", "crash1", "ping3", "crash2"));
+        assertEquals(5, queue.size());
+        assertEquals(Arrays.asList("crash1", "crash2", "ping1"), queue.pollBatch(3));
+        assertEquals(2, queue.size());
+        assertEquals(Arrays.asList("ping2", "ping3"), queue.pollBatch(3));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testRemoveAndContains_WorkAcrossPriorities() {
+        queue.offer("ping1");
+        queue.offer("crash1");
+        assertTrue(queue.contains("ping1"));
+        assertTrue(queue.remove("ping1"));
+        assertFalse(queue.contains("ping1"));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testHeadQuery_UsesThePriorityIndex() {
+        SQLiteQueueDbHelper helper = new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext());
+        SQLiteDatabase db = helper.getWritableDatabase();
+        Cursor c = db.rawQuery("EXPLAIN QUERY PLAN SELECT " + SQLiteQueueTable._ID + " FROM " +
+                SQLiteQueueTable.PRIORITY_TABLE_NAME + " ORDER BY " + SQLiteQueueTable.COLUMN_NAME_PRIORITY +
+                "," + SQLiteQueueTable._ID + " LIMIT 1", null);
+        while (c.moveToNext()) {
+            String detail = c.getString(c.getColumnIndex("detail"));
+            assertFalse(detail, detail.contains("TEMP B-TREE"));
+        }
+        c.close();
+        helper.close();
+    }
+
+    @Test
+    public void testConstructor_TableWithoutPriority_mustThrow() throws IOException {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        try {
+            new SQLitePersistentPriorityQueue<>(mConverter, mPrioritizer, manager);
+            fail("A FIFO table cannot back a priority queue");
+        } catch (IllegalArgumentException ignored) {
+        } finally {
+            manager.close();
+        }
+    }
+}
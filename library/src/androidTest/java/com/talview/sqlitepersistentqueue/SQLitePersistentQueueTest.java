@@ -7,6 +7,7 @@ import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
 import com.talview.sqlitepersistentqueue.db.SQLiteQueueDbHelper;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueEntry;
 import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
 import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
 
@@ -17,9 +18,17 @@ import org.junit.runner.RunWith;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -65,6 +74,36 @@ public class SQLitePersistentQueueTest {
         }
     };
 
+    private List<List<String>> mAddedBatches = new ArrayList<>();
+    private List<List<String>> mRemovedBatches = new ArrayList<>();
+
+    private SQLiteBatchBusSubscriber<String> mBatchSubscriber = new SQLiteBatchBusSubscriber<String>() {
+        @Override
+        public void onAddedAll(List<String> objects) {
+            mAddedBatches.add(new ArrayList<>(objects));
+        }
+
+        @Override
+        public void onRemovedAll(List<String> objects) {
+            mRemovedBatches.add(new ArrayList<>(objects));
+        }
+
+        @Override
+        public void onAdded(String object) {
+            fail("Batch subscribers must not receive single added events for addAll");
+        }
+
+        @Override
+        public void onRemoved(String object) {
+            fail("Batch subscribers must not receive single removed events for pollBatch");
+        }
+
+        @Override
+        public void onCleared() {
+
+        }
+    };
+
     private SQLitePersistentQueue<String> queue;
 
     @Before
@@ -78,6 +117,8 @@ public class SQLitePersistentQueueTest {
         mAddCallCounter = 0;
         mRemoveCallCounter = 0;
         mClearCallCounter = 0;
+        mAddedBatches.clear();
+        mRemovedBatches.clear();
         queue.clear();
         queue.close();
     }
@@ -235,6 +276,69 @@ public class SQLitePersistentQueueTest {
         assertNull(queue.poll());
     }
 
+    @Test
+    public void testPoll_ConcurrentConsumersNeverReceiveTheSameItem() throws InterruptedException {
+        int itemCount = 200;
+        for (int i = 0; i < itemCount; i++) {
+            queue.offer("item" + i);
+        }
+        final List<String> polled = Collections.synchronizedList(new ArrayList<String>());
+        Thread[] consumers = new Thread[4];
+        for (int i = 0; i < consumers.length; i++) {
+            consumers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    String item;
+                    while ((item = queue.poll()) != null) {
+                        polled.add(item);
+                    }
+                }
+            });
+            consumers[i].start();
+        }
+        for (Thread consumer : consumers) {
+            consumer.join();
+        }
+        Set<String> unique = new HashSet<>(polled);
+        assertEquals(itemCount, polled.size());
+        assertEquals(itemCount, unique.size());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testPollBatch_ReturnsAndRemovesUpToMaxFromHead() {
+        queue.addAll(createListForTest());
+        List<String> polled = queue.pollBatch(2);
+        assertEquals(createListForTest().subList(0, 2), polled);
+        assertEquals(1, queue.size());
+        assertEquals(value3(), queue.peek());
+    }
+
+    @Test
+    public void testPollBatch_emptyQueue_mustReturnEmptyList() {
+        assertTrue(queue.pollBatch(10).isEmpty());
+    }
+
+    @Test
+    public void testDrainTo_TransfersAtMostMaxElementsInOrder() {
+        queue.addAll(createListForTest());
+        List<String> sink = new ArrayList<>();
+        assertEquals(2, queue.drainTo(sink, 2));
+        assertEquals(createListForTest().subList(0, 2), sink);
+        assertEquals(1, queue.drainTo(sink));
+        assertEquals(createListForTest(), sink);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testDrainTo_itself_mustThrow() {
+        try {
+            queue.drainTo(queue);
+            fail("Must throw when draining a queue into itself");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
     @Test
     public void testPeek_ReturnsHeadOfQueue() {
         queue.addAll(createListForTest());
@@ -264,6 +368,28 @@ public class SQLitePersistentQueueTest {
         unsubscribe();
     }
 
+    @Test
+    public void testBatchSubscriberOnAddedAllCalledOnce_WhenAddingAll() {
+        subscribeBatch();
+        queue.setInsertBatchSize(2);
+        List<String> list = createListForTest();
+        queue.addAll(list);
+        assertEquals(1, mAddedBatches.size());
+        assertEquals(list, mAddedBatches.get(0));
+        assertEquals(list.size(), queue.size());
+        unsubscribeBatch();
+    }
+
+    @Test
+    public void testBatchSubscriberOnRemovedAllCalledOnce_WhenPollingBatch() {
+        subscribeBatch();
+        queue.addAll(createListForTest());
+        queue.pollBatch(2);
+        assertEquals(1, mRemovedBatches.size());
+        assertEquals(createListForTest().subList(0, 2), mRemovedBatches.get(0));
+        unsubscribeBatch();
+    }
+
     @Test
     public void testSubscriberOnRemovedCalled_WhenRemovingItem() {
         subscribe();
@@ -412,6 +538,606 @@ public class SQLitePersistentQueueTest {
         assertTrue(queue.contains(value1()));
     }
 
+    @Test
+    public void testReserveAndAck_RemoveElementsForGood() {
+        queue.addAll(createListForTest());
+        List<SQLiteQueueLease<String>> leases = queue.reserve(2, 1, TimeUnit.MINUTES);
+        assertEquals(2, leases.size());
+        assertEquals(value1(), leases.get(0).getElement());
+        assertEquals(value2(), leases.get(1).getElement());
+        assertEquals(1, queue.size());
+        assertTrue(queue.ack(leases.get(0)));
+        assertFalse(queue.ack(leases.get(0)));
+        assertTrue(queue.ack(leases.get(1)));
+        assertEquals(value3(), queue.poll());
+        assertTrue(queue.reserve(2, 1, TimeUnit.MINUTES).isEmpty());
+    }
+
+    @Test
+    public void testNack_ReturnsElementToItsPlaceAtTheHead() {
+        queue.addAll(createListForTest());
+        SQLiteQueueLease<String> lease = queue.reserve(1, 1, TimeUnit.MINUTES).get(0);
+        assertEquals(value2(), queue.peek());
+        assertTrue(queue.nack(lease));
+        assertFalse(queue.ack(lease));
+        assertEquals(3, queue.size());
+        assertEquals(value1(), queue.poll());
+    }
+
+    @Test
+    public void testReserve_ReclaimsExpiredLeases() {
+        queue.offer(value1());
+        SQLiteQueueLease<String> expired = queue.reserve(1, 0, TimeUnit.MILLISECONDS).get(0);
+        List<SQLiteQueueLease<String>> leases = queue.reserve(1, 1, TimeUnit.MINUTES);
+        assertEquals(1, leases.size());
+        assertEquals(value1(), leases.get(0).getElement());
+        assertFalse("An expired lease must not settle an element leased again", queue.ack(expired));
+        assertTrue(queue.ack(leases.get(0)));
+    }
+
+    @Test
+    public void testBinaryConverter_RoundTripsElementsThroughBlobTable() throws IOException {
+        QueueObjectBinaryConverter<String> binaryConverter = new QueueObjectBinaryConverter<String>() {
+            @Override
+            public String deserialize(byte[] bytes, int offset, int length) {
+                return new String(bytes, offset, length, Charset.forName("UTF-8"));
+            }
+
+            @Override
+            public byte[] serialize(String queueObject) {
+                return queueObject.getBytes(Charset.forName("UTF-8"));
+            }
+        };
+        SQLitePersistentQueue<String> binaryQueue =
+                new SQLitePersistentQueue<>(InstrumentationRegistry.getTargetContext(), binaryConverter);
+        try {
+            binaryQueue.addAll(createListForTest());
+            binaryQueue.offer("\u00e9t\u00e9");
+            assertEquals(4, binaryQueue.size());
+            assertTrue(queue.isEmpty());
+            assertTrue(binaryQueue.contains(value2()));
+            assertTrue(binaryQueue.remove(value2()));
+            assertEquals(value1(), binaryQueue.peek());
+            assertEquals(Arrays.asList(value1(), value3()), binaryQueue.pollBatch(2));
+            assertEquals("\u00e9t\u00e9", binaryQueue.poll());
+            assertNull(binaryQueue.poll());
+        } finally {
+            binaryQueue.clear();
+            binaryQueue.close();
+        }
+    }
+
+
+    @Test
+    public void testWriteBehind_offersAreBufferedAndPolledInOrder() throws IOException {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        SQLitePersistentQueue<String> buffered = new SQLitePersistentQueue<>(mConverter, manager);
+        try {
+            buffered.setWriteBehindPolicy(new SQLiteQueueWriteBehindPolicy.Builder()
+                    .setFlushInterval(1, TimeUnit.HOURS)
+                    .build());
+            buffered.offer(value1());
+            buffered.add(value2());
+            assertEquals(0, manager.getCount());
+            assertEquals(2, buffered.size());
+            assertEquals(value1(), buffered.poll());
+            assertEquals(1, manager.getCount());
+            buffered.offer(value3());
+            assertEquals(value2(), buffered.poll());
+            assertEquals(value3(), buffered.poll());
+            assertNull(buffered.poll());
+        } finally {
+            buffered.clear();
+            buffered.close();
+        }
+    }
+
+    @Test
+    public void testWriteBehind_flushesOnceMaxPendingIsReached() throws Exception {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        SQLitePersistentQueue<String> buffered = new SQLitePersistentQueue<>(mConverter, manager);
+        try {
+            buffered.getEventBus().subscribe(mBatchSubscriber);
+            buffered.setWriteBehindPolicy(new SQLiteQueueWriteBehindPolicy.Builder()
+                    .setFlushInterval(1, TimeUnit.HOURS)
+                    .setMaxPendingElements(3)
+                    .build());
+            for (String value : createListForTest()) {
+                buffered.offer(value);
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (manager.getCount() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(3, manager.getCount());
+            assertEquals(Collections.singletonList(createListForTest()), mAddedBatches);
+        } finally {
+            buffered.clear();
+            buffered.close();
+        }
+    }
+
+    @Test
+    public void testWriteBehind_flushesOnInterval() throws Exception {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        SQLitePersistentQueue<String> buffered = new SQLitePersistentQueue<>(mConverter, manager);
+        try {
+            buffered.setWriteBehindPolicy(new SQLiteQueueWriteBehindPolicy.Builder()
+                    .setFlushInterval(10, TimeUnit.MILLISECONDS)
+                    .build());
+            buffered.offer(value1());
+            long deadline = System.currentTimeMillis() + 5000;
+            while (manager.getCount() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, manager.getCount());
+            // The next element buffered schedules the next flush.
+            buffered.offer(value2());
+            deadline = System.currentTimeMillis() + 5000;
+            while (manager.getCount() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, manager.getCount());
+        } finally {
+            buffered.clear();
+            buffered.close();
+        }
+    }
+
+    @Test
+    public void testWriteBehind_failedTimedFlush_isRetried() throws Exception {
+        SQLiteQueueDbHelper helper = new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext());
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(helper);
+        SQLitePersistentQueue<String> buffered = new SQLitePersistentQueue<>(mConverter, manager);
+        try {
+            buffered.setWriteBehindPolicy(new SQLiteQueueWriteBehindPolicy.Builder()
+                    .setFlushInterval(10, TimeUnit.MILLISECONDS)
+                    .build());
+            helper.getWritableDatabase().execSQL("CREATE TRIGGER reject BEFORE INSERT ON " +
+                    SQLiteQueueTable.TABLE_NAME + " BEGIN SELECT RAISE(ABORT, 'rejected'); END");
+            buffered.offer(value1());
+            Thread.sleep(100);
+            assertEquals(0, manager.getCount());
+            helper.getWritableDatabase().execSQL("DROP TRIGGER reject");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (manager.getCount() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, manager.getCount());
+        } finally {
+            buffered.clear();
+            buffered.close();
+        }
+    }
+
+    @Test
+    public void testWriteBehind_flushAndClose_persistBufferedElements() throws IOException {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        SQLitePersistentQueue<String> buffered = new SQLitePersistentQueue<>(mConverter, manager);
+        buffered.setWriteBehindPolicy(new SQLiteQueueWriteBehindPolicy.Builder()
+                .setFlushInterval(1, TimeUnit.HOURS)
+                .build());
+        buffered.offer(value1());
+        buffered.flush();
+        assertEquals(1, manager.getCount());
+        buffered.offer(value2());
+        buffered.close();
+        SQLiteQueueTableManager reopened = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        try {
+            assertEquals(2, reopened.getCount());
+            assertEquals(value1(), reopened.removeHead());
+            assertEquals(value2(), reopened.removeHead());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void testWriteBehind_failedFlush_keepsUncommittedElementsBuffered() throws IOException {
+        SQLiteQueueDbHelper helper = new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext());
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(helper);
+        SQLitePersistentQueue<String> buffered = new SQLitePersistentQueue<>(mConverter, manager);
+        try {
+            buffered.getEventBus().subscribe(mBatchSubscriber);
+            buffered.setInsertBatchSize(2);
+            buffered.setWriteBehindPolicy(new SQLiteQueueWriteBehindPolicy.Builder()
+                    .setFlushInterval(1, TimeUnit.HOURS)
+                    .build());
+            for (String value : createListForTest()) {
+                buffered.offer(value);
+            }
+            helper.getWritableDatabase().execSQL("CREATE TRIGGER reject BEFORE INSERT ON " +
+                    SQLiteQueueTable.TABLE_NAME + " WHEN NEW." + SQLiteQueueTable.COLUMN_NAME_VALUE +
+                    " = '" + value3() + "' BEGIN SELECT RAISE(ABORT, 'rejected'); END");
+            try {
+                buffered.flush();
+                fail("A failed flush must throw");
+            } catch (RuntimeException ignored) {
+            } finally {
+                helper.getWritableDatabase().execSQL("DROP TRIGGER reject");
+            }
+            assertEquals(2, manager.getCount());
+            assertEquals(3, buffered.size());
+            assertEquals(Collections.singletonList(Arrays.asList(value1(), value2())), mAddedBatches);
+            buffered.flush();
+            assertEquals(3, manager.getCount());
+            assertEquals(3, buffered.size());
+            assertEquals(createListForTest(), buffered.pollBatch(3));
+        } finally {
+            buffered.clear();
+            buffered.close();
+        }
+    }
+
+    @Test
+    public void testWriteBehind_unserializableElement_failsTheOfferOnly() throws IOException {
+        QueueObjectConverter<String> failingConverter = new QueueObjectConverter<String>() {
+            @Override
+            public String deserialize(String value) {
+                return value;
+            }
+
+            @Override
+            public String serialize(String queueObject) {
+                if (queueObject.equals(value2())) {
+                    throw new IllegalStateException("Cannot serialize " + queueObject);
+                }
+                return queueObject;
+            }
+        };
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        SQLitePersistentQueue<String> buffered = new SQLitePersistentQueue<>(failingConverter, manager);
+        try {
+            buffered.setWriteBehindPolicy(new SQLiteQueueWriteBehindPolicy.Builder()
+                    .setFlushInterval(1, TimeUnit.HOURS)
+                    .build());
+            buffered.offer(value1());
+            try {
+                buffered.offer(value2());
+                fail("Offering an element the converter rejects must throw");
+            } catch (IllegalStateException ignored) {
+            }
+            buffered.offer(value3());
+            assertEquals(2, buffered.size());
+            buffered.flush();
+            assertEquals(2, manager.getCount());
+            assertEquals(Arrays.asList(value1(), value3()), buffered.pollBatch(3));
+        } finally {
+            buffered.clear();
+            buffered.close();
+        }
+    }
+
+    @Test
+    public void testWriteBehind_offerAfterClose_writesTheElement() {
+        SQLiteQueueWriteBehind<String> writeBehind = new SQLiteQueueWriteBehind<>(queue,
+                new SQLiteQueueWriteBehindPolicy.Builder()
+                        .setFlushInterval(1, TimeUnit.HOURS)
+                        .setMaxPendingElements(1)
+                        .build());
+        writeBehind.close();
+        writeBehind.offer(value1());
+        assertEquals(0, writeBehind.getPendingCount());
+        assertEquals(value1(), queue.poll());
+    }
+
+    @Test
+    public void testWriteBehind_changingPolicy_writesPreviousBufferFirst() throws Exception {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        final Thread[] producer = new Thread[1];
+        final SQLitePersistentQueue<String> buffered = new SQLitePersistentQueue<String>(mConverter, manager) {
+            @Override
+            int insertEncoded(List<String> elements, List<Object> values, int batchSize) {
+                if (producer[0] == null) {
+                    // Offers while the previous buffer is being written must not overtake it.
+                    producer[0] = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            offer(value3());
+                            flush();
+                        }
+                    });
+                    producer[0].start();
+                    try {
+                        producer[0].join(200);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return super.insertEncoded(elements, values, batchSize);
+            }
+        };
+        try {
+            buffered.setWriteBehindPolicy(new SQLiteQueueWriteBehindPolicy.Builder()
+                    .setFlushInterval(1, TimeUnit.HOURS)
+                    .build());
+            buffered.offer(value1());
+            buffered.offer(value2());
+            buffered.setWriteBehindPolicy(new SQLiteQueueWriteBehindPolicy.Builder()
+                    .setFlushInterval(1, TimeUnit.HOURS)
+                    .build());
+            producer[0].join();
+            buffered.flush();
+            assertEquals(createListForTest(), buffered.pollBatch(3));
+        } finally {
+            buffered.clear();
+            buffered.close();
+        }
+    }
+
+    @Test
+    public void testWriteBehind_clear_discardsBufferedElements() throws IOException {
+        queue.setWriteBehindPolicy(new SQLiteQueueWriteBehindPolicy.Builder()
+                .setFlushInterval(1, TimeUnit.HOURS)
+                .build());
+        queue.offer(value1());
+        queue.clear();
+        assertEquals(0, queue.size());
+        queue.setWriteBehindPolicy(SQLiteQueueWriteBehindPolicy.FLUSH_ON_OFFER);
+        queue.offer(value2());
+        assertEquals(value2(), queue.poll());
+    }
+
+    @Test
+    public void testReadAhead_peekThenPollDecodesEachElementOnce() throws IOException {
+        final int[] deserialized = {0};
+        QueueObjectConverter<String> countingConverter = new QueueObjectConverter<String>() {
+            @Override
+            public String deserialize(String value) {
+                ++deserialized[0];
+                return value;
+            }
+
+            @Override
+            public String serialize(String queueObject) {
+                return queueObject;
+            }
+        };
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        SQLitePersistentQueue<String> readAhead = new SQLitePersistentQueue<>(countingConverter, manager);
+        try {
+            readAhead.setReadAheadSize(2);
+            readAhead.addAll(createListForTest());
+            for (String value : createListForTest()) {
+                assertEquals(value, readAhead.peek());
+                assertEquals(value, readAhead.element());
+                assertEquals(value, readAhead.poll());
+            }
+            assertNull(readAhead.peek());
+            assertNull(readAhead.poll());
+            assertEquals(3, deserialized[0]);
+            assertEquals(0, manager.getCount());
+        } finally {
+            readAhead.clear();
+            readAhead.close();
+        }
+    }
+
+    @Test
+    public void testReadAhead_seesElementsAddedAfterItWasFilled() {
+        queue.setReadAheadSize(10);
+        assertNull(queue.peek());
+        queue.offer(value1());
+        assertEquals(value1(), queue.peek());
+        queue.offer(value2());
+        assertEquals(value1(), queue.poll());
+        assertEquals(value2(), queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testReadAhead_removeAndClear_invalidateTheWindow() {
+        queue.setReadAheadSize(10);
+        queue.addAll(createListForTest());
+        assertEquals(value1(), queue.peek());
+        assertTrue(queue.remove(value1()));
+        assertEquals(value2(), queue.peek());
+        Iterator<String> it = queue.iterator();
+        it.next();
+        it.remove();
+        assertEquals(value3(), queue.peek());
+        queue.clear();
+        assertNull(queue.peek());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testReadAhead_nackedElementGoesBackInFrontOfTheWindow() {
+        queue.setReadAheadSize(10);
+        queue.addAll(createListForTest());
+        SQLiteQueueLease<String> lease = queue.reserve(1, 1, TimeUnit.MINUTES).get(0);
+        assertEquals(value2(), queue.peek());
+        assertTrue(queue.nack(lease));
+        assertEquals(value1(), queue.poll());
+        assertEquals(value2(), queue.poll());
+    }
+
+    @Test
+    public void testReadAhead_peekWhilePollingABatch_doesNotKeepTheRemovedRows() throws IOException {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        SQLitePersistentQueue<String> readAhead = new SQLitePersistentQueue<String>(mConverter, manager) {
+            @Override
+            List<SQLiteQueueEntry> removeHeadEntries(int maxElements) {
+                // Another consumer peeks just before the rows are removed.
+                peek();
+                return super.removeHeadEntries(maxElements);
+            }
+        };
+        try {
+            readAhead.setReadAheadSize(10);
+            readAhead.addAll(createListForTest());
+            assertEquals(Arrays.asList(value1(), value2()), readAhead.pollBatch(2));
+            assertEquals(value3(), readAhead.peek());
+        } finally {
+            readAhead.clear();
+            readAhead.close();
+        }
+    }
+
+    @Test
+    public void testReadAhead_peekWhileReserving_doesNotKeepTheLeasedRows() throws IOException {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        SQLitePersistentQueue<String> readAhead = new SQLitePersistentQueue<String>(mConverter, manager) {
+            @Override
+            List<SQLiteQueueEntry> leaseHeadEntries(int maxElements, long leaseExpiresAt, long leaseToken) {
+                peek();
+                return super.leaseHeadEntries(maxElements, leaseExpiresAt, leaseToken);
+            }
+        };
+        try {
+            readAhead.setReadAheadSize(10);
+            readAhead.addAll(createListForTest());
+            assertEquals(2, readAhead.reserve(2, 1, TimeUnit.MINUTES).size());
+            assertEquals(value3(), readAhead.peek());
+        } finally {
+            readAhead.clear();
+            readAhead.close();
+        }
+    }
+
+    @Test
+    public void testBusWithExecutor_deliversOffTheCallerAndCoalescesEvents() {
+        final List<Runnable> tasks = new ArrayList<>();
+        queue.getEventBus().setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        subscribe();
+        subscribeBatch();
+        for (String value : createListForTest()) {
+            queue.offer(value);
+        }
+        queue.pollBatch(2);
+        queue.poll();
+        assertEquals(0, mAddCallCounter);
+        assertTrue(mAddedBatches.isEmpty());
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        assertEquals(3, mAddCallCounter);
+        assertEquals(3, mRemoveCallCounter);
+        assertEquals(Collections.singletonList(createListForTest()), mAddedBatches);
+        assertEquals(Collections.singletonList(createListForTest()), mRemovedBatches);
+
+        unsubscribeBatch();
+        queue.clear();
+        queue.offer(value1());
+        tasks.remove(0).run();
+        assertEquals(1, mClearCallCounter);
+        assertEquals(4, mAddCallCounter);
+        assertTrue(tasks.isEmpty());
+        unsubscribe();
+    }
+
+    @Test
+    public void testPollPayload_deserializesOnlyOnAccess() throws IOException {
+        final int[] deserialized = {0};
+        QueueObjectConverter<String> countingConverter = new QueueObjectConverter<String>() {
+            @Override
+            public String deserialize(String value) {
+                ++deserialized[0];
+                return value;
+            }
+
+            @Override
+            public String serialize(String queueObject) {
+                return queueObject;
+            }
+        };
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        SQLitePersistentQueue<String> lazy = new SQLitePersistentQueue<>(countingConverter, manager);
+        try {
+            lazy.addAll(createListForTest());
+            SQLiteQueuePayload<String> payload = lazy.pollPayload();
+            assertEquals(value1(), payload.getValue());
+            assertNull(payload.getBytes());
+            assertEquals(0, deserialized[0]);
+            assertEquals(value1(), payload.get());
+            assertEquals(value1(), payload.get());
+            assertEquals(1, deserialized[0]);
+
+            lazy.getEventBus().subscribe(mSubscriber);
+            lazy.pollPayload();
+            assertEquals(2, deserialized[0]);
+            assertEquals(1, mRemoveCallCounter);
+            lazy.getEventBus().unsubscribe(mSubscriber);
+
+            assertEquals(value3(), lazy.pollPayload().getValue());
+            assertNull(lazy.pollPayload());
+            assertEquals(2, deserialized[0]);
+        } finally {
+            lazy.clear();
+            lazy.close();
+        }
+    }
+
+    @Test
+    public void testRemoveObject_serializesTheElementOnce() throws IOException {
+        final int[] serialized = {0};
+        QueueObjectConverter<String> countingConverter = new QueueObjectConverter<String>() {
+            @Override
+            public String deserialize(String value) {
+                return value;
+            }
+
+            @Override
+            public String serialize(String queueObject) {
+                ++serialized[0];
+                return queueObject;
+            }
+        };
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        SQLitePersistentQueue<String> counted = new SQLitePersistentQueue<>(countingConverter, manager);
+        try {
+            counted.offer(value1());
+            serialized[0] = 0;
+            assertTrue(counted.remove(value1()));
+            assertFalse(counted.remove(value1()));
+            assertEquals(2, serialized[0]);
+        } finally {
+            counted.clear();
+            counted.close();
+        }
+    }
+
+    @Test
+    public void testMetrics_countElementsAndTimeEachPhase() {
+        SQLiteQueueMetricsRecorder metrics = new SQLiteQueueMetricsRecorder();
+        queue.setMetrics(metrics);
+        subscribe();
+        queue.offer(value1());
+        queue.addAll(Arrays.asList(value2(), value3()));
+        assertEquals(3, metrics.getDepth());
+        assertTrue(metrics.getDatabaseSize() > 0);
+        assertEquals(value1(), queue.poll());
+        assertEquals(2, queue.pollBatch(5).size());
+
+        assertEquals(3, metrics.getEnqueuedCount());
+        assertEquals(3, metrics.getDequeuedCount());
+        assertEquals(0, metrics.getFailedInsertCount());
+        assertEquals(0, metrics.getDepth());
+        assertEquals(2, metrics.getLatency(SQLiteQueueMetrics.PHASE_SERIALIZE).getCount());
+        assertEquals(4, metrics.getLatency(SQLiteQueueMetrics.PHASE_SQL).getCount());
+        assertEquals(3, metrics.getLatency(SQLiteQueueMetrics.PHASE_DESERIALIZE).getCount());
+        assertEquals(4, metrics.getLatency(SQLiteQueueMetrics.PHASE_PUBLISH).getCount());
+
+        queue.setMetrics(SQLiteQueueMetrics.NONE);
+        queue.offer(value1());
+        assertEquals(3, metrics.getEnqueuedCount());
+    }
 
     private void subscribe() {
         queue.getEventBus().subscribe(mSubscriber);
@@ -421,6 +1147,14 @@ public class SQLitePersistentQueueTest {
         queue.getEventBus().unsubscribe(mSubscriber);
     }
 
+    private void subscribeBatch() {
+        queue.getEventBus().subscribe(mBatchSubscriber);
+    }
+
+    private void unsubscribeBatch() {
+        queue.getEventBus().unsubscribe(mBatchSubscriber);
+    }
+
     //region LIST HELPER
     private List<String> createListForTest() {
         List<String> list = new ArrayList<>();
@@ -0,0 +1,122 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts what polling allocates on the calling thread, with and without a subscriber on the event
+ * bus, and with {@link SQLitePersistentQueue#pollPayload()} for a consumer that never looks at the
+ * element. Elements are small records parsed back from their stored form, so that deserializing
+ * them allocates like a real converter would. Results are logged under the {@value #TAG} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SQLiteQueueAllocationBenchmark {
+    private static final String TAG = "SQLiteQueueBenchmark";
+    private static final int ELEMENTS = 1000;
+
+    private QueueObjectConverter<Record> mConverter = new QueueObjectConverter<Record>() {
+        @Override
+        public Record deserialize(String value) {
+            String[] fields = value.split(",");
+            return new Record(Integer.parseInt(fields[0]), fields[1]);
+        }
+
+        @Override
+        public String serialize(Record queueObject) {
+            return queueObject.mId + "," + queueObject.mName;
+        }
+    };
+
+    private SQLiteBusSubscriber<Record> mSubscriber = new SQLiteBusSubscriber<Record>() {
+        @Override
+        public void onAdded(Record object) {
+        }
+
+        @Override
+        public void onRemoved(Record object) {
+        }
+
+        @Override
+        public void onCleared() {
+        }
+    };
+
+    private SQLitePersistentQueue<Record> queue;
+
+    @Before
+    public void setUp() {
+        queue = new SQLitePersistentQueue<>(InstrumentationRegistry.getTargetContext(), mConverter);
+        queue.clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.clear();
+        queue.close();
+    }
+
+    @Test
+    public void benchmarkPollAllocations() {
+        log("poll, subscriber", drain(true, false));
+        log("poll, no subscriber", drain(false, false));
+        log("pollPayload, no subscriber", drain(false, true));
+    }
+
+    /**
+     * Drains {@link #ELEMENTS} elements and returns the number of objects and bytes allocated on
+     * this thread while doing so.
+     */
+    private int[] drain(boolean subscribe, boolean lazy) {
+        List<Record> elements = new ArrayList<>(ELEMENTS);
+        for (int i = 0; i < ELEMENTS; i++) {
+            elements.add(new Record(i, "element" + i));
+        }
+        queue.addAll(elements);
+        if (subscribe) {
+            queue.getEventBus().subscribe(mSubscriber);
+        }
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            if (lazy) {
+                while (queue.pollPayload() != null) {
+                    // Forward or drop the raw value without deserializing it.
+                }
+            } else {
+                while (queue.poll() != null) {
+                    // Consume the element.
+                }
+            }
+        } finally {
+            Debug.stopAllocCounting();
+            queue.getEventBus().unsubscribe(mSubscriber);
+        }
+        return new int[]{Debug.getThreadAllocCount(), Debug.getThreadAllocSize()};
+    }
+
+    private static void log(String mode, int[] allocations) {
+        Log.i(TAG, String.format("%s: %.1f objects/poll %.0f bytes/poll", mode,
+                allocations[0] / (double) ELEMENTS, allocations[1] / (double) ELEMENTS));
+    }
+
+    private static class Record {
+        final int mId;
+        final String mName;
+
+        Record(int id, String name) {
+            mId = id;
+            mName = name;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures how drain throughput scales with the number of worker threads, polling one element at
+ * a time versus claiming batches through {@link SQLiteQueueConsumer}. Every element costs the
+ * worker {@link #WORK_NANOS} of CPU, standing in for the real processing. Results are logged under
+ * the {@value #TAG} tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SQLiteQueueConsumerBenchmark {
+    private static final String TAG = "SQLiteQueueBenchmark";
+    private static final int ELEMENTS = 2000;
+    private static final int CLAIM_SIZE = 50;
+    private static final long WORK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final int[] WORKER_COUNTS = {1, 2, 4, 8};
+
+    private QueueObjectConverter<String> mConverter = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    private SQLitePersistentQueue<String> queue;
+
+    @Before
+    public void setUp() {
+        queue = new SQLitePersistentQueue<>(InstrumentationRegistry.getTargetContext(), mConverter);
+        queue.clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.clear();
+        queue.close();
+    }
+
+    @Test
+    public void benchmarkDrainThroughput() throws InterruptedException {
+        for (int workers : WORKER_COUNTS) {
+            Log.i(TAG, String.format("workers=%d poll=%.0f/s consumer=%.0f/s", workers,
+                    drain(workers, false), drain(workers, true)));
+        }
+    }
+
+    /**
+     * Drains {@link #ELEMENTS} elements with the given number of workers and returns the
+     * throughput in elements per second.
+     */
+    private double drain(int workers, final boolean claimBatches) throws InterruptedException {
+        List<String> values = new ArrayList<>(ELEMENTS);
+        for (int i = 0; i < ELEMENTS; i++) {
+            values.add("value" + i);
+        }
+        queue.addAll(values);
+        final AtomicInteger processed = new AtomicInteger();
+        Thread[] threads = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if (claimBatches) {
+                        SQLiteQueueConsumer<String> consumer = queue.newConsumer(CLAIM_SIZE, 1, TimeUnit.MINUTES);
+                        while (consumer.poll() != null) {
+                            work();
+                            processed.incrementAndGet();
+                        }
+                        consumer.close();
+                    } else {
+                        while (queue.poll() != null) {
+                            work();
+                            processed.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertEquals(ELEMENTS, processed.get());
+        return ELEMENTS * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    private static void work() {
+        long end = System.nanoTime() + WORK_NANOS;
+        while (System.nanoTime() < end) {
+            // Busy wait, standing in for processing the element.
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A test class for consumers claiming batches of a sqlite persistent queue.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SQLiteQueueConsumerTest {
+    private QueueObjectConverter<String> mConverter = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    private SQLitePersistentQueue<String> queue;
+
+    @Before
+    public void setUp() {
+        queue = new SQLitePersistentQueue<>(InstrumentationRegistry.getTargetContext(), mConverter);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.clear();
+        queue.close();
+    }
+
+    @Test
+    public void testPoll_ClaimsBatchesInQueueOrder() {
+        queue.addAll(values(5));
+        SQLiteQueueConsumer<String> consumer = queue.newConsumer(2, 1, TimeUnit.MINUTES);
+        assertEquals("value0", consumer.poll());
+        assertEquals(3, queue.size());
+        assertEquals("value1", consumer.poll());
+        assertEquals("value2", consumer.poll());
+        assertEquals("value3", consumer.poll());
+        assertEquals("value4", consumer.poll());
+        assertNull(consumer.poll());
+        consumer.close();
+    }
+
+    @Test
+    public void testConsumers_ClaimDisjointBatches() {
+        queue.addAll(values(4));
+        SQLiteQueueConsumer<String> first = queue.newConsumer(2, 1, TimeUnit.MINUTES);
+        SQLiteQueueConsumer<String> second = queue.newConsumer(2, 1, TimeUnit.MINUTES);
+        assertEquals("value0", first.poll());
+        assertEquals("value2", second.poll());
+        assertEquals("value1", first.poll());
+        assertEquals("value3", second.poll());
+        first.close();
+        second.close();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testClose_GivesUnconsumedElementsBack() {
+        queue.addAll(values(3));
+        SQLiteQueueConsumer<String> consumer = queue.newConsumer(3, 1, TimeUnit.MINUTES);
+        assertEquals("value0", consumer.poll());
+        consumer.close();
+        assertEquals(2, queue.size());
+        assertEquals("value1", queue.poll());
+        assertEquals("value2", queue.poll());
+        assertEquals(0, queue.reclaimExpiredLeases());
+    }
+
+    @Test
+    public void testParallelConsumers_ProcessEveryElementExactlyOnce() throws InterruptedException {
+        final int count = 1000;
+        queue.addAll(values(count));
+        final List<String> consumed = Collections.synchronizedList(new ArrayList<String>());
+        Thread[] workers = new Thread[4];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    SQLiteQueueConsumer<String> consumer = queue.newConsumer(25, 1, TimeUnit.MINUTES);
+                    String value;
+                    while ((value = consumer.poll()) != null) {
+                        consumed.add(value);
+                    }
+                    consumer.close();
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Set<String> unique = new HashSet<>(consumed);
+        assertEquals(count, consumed.size());
+        assertEquals(count, unique.size());
+        assertTrue(queue.isEmpty());
+    }
+
+    private static List<String> values(int count) {
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add("value" + i);
+        }
+        return values;
+    }
+}
@@ -7,11 +7,26 @@ import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
 public class SQLiteQueueIteratorTest {
+    private QueueObjectConverter<String> mConverter = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
     @Test
     public void next() throws Exception {
         SQLiteQueueDbHelper helper = new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext());
@@ -33,4 +48,48 @@ public class SQLiteQueueIteratorTest {
         helper.close();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void next_WalksAllRowsAcrossPages() throws Exception {
+        SQLiteQueueDbHelper helper = new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext());
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(helper);
+        List<String> values = Arrays.asList("a", "b", "c", "d", "e");
+        manager.insertAll(values, 10);
+        Iterator<String> it = new SQLiteQueueIterator<>(manager, SQLiteQueueCodec.text(mConverter), null, 2);
+        List<String> iterated = new ArrayList<>();
+        while (it.hasNext()) {
+            iterated.add(it.next());
+        }
+        assertEquals(values, iterated);
+        manager.clear();
+        helper.close();
+    }
+
+    @Test
+    public void remove_DeletesTheRowLastReturned() throws Exception {
+        SQLiteQueueDbHelper helper = new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext());
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(helper);
+        manager.insertAll(Arrays.asList("a", "b", "c"), 10);
+        Iterator<String> it = new SQLiteQueueIterator<>(manager, SQLiteQueueCodec.text(mConverter), null, 2);
+        it.next();
+        it.next();
+        it.remove();
+        assertEquals("c", it.next());
+        assertFalse(it.hasNext());
+        assertEquals(2, manager.getCount());
+        assertFalse(manager.contains("b"));
+        manager.clear();
+        helper.close();
+    }
+
+    @Test
+    public void remove_BeforeNext_MustThrow() throws Exception {
+        SQLiteQueueDbHelper helper = new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext());
+        Iterator<String> it = new SQLiteQueueIterator<>(new SQLiteQueueTableManager(helper), mConverter);
+        try {
+            it.remove();
+            fail("Must throw when remove() is called before next()");
+        } catch (IllegalStateException ignored) {
+        }
+        helper.close();
+    }
+}
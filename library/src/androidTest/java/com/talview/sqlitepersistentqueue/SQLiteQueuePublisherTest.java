@@ -0,0 +1,201 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueDbHelper;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A test class for the reactive streams view of a sqlite persistent queue.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SQLiteQueuePublisherTest {
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private QueueObjectConverter<String> mConverter = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    private SQLiteQueueTableManager manager;
+    private SQLitePersistentQueue<String> queue;
+    private Publisher<String> publisher;
+
+    @Before
+    public void setUp() {
+        manager = new SQLiteQueueTableManager(new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext()));
+        queue = new SQLitePersistentQueue<>(mConverter, manager);
+        publisher = queue.asPublisher(DIRECT, 2, 1, TimeUnit.MINUTES);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.clear();
+        queue.close();
+    }
+
+    @Test
+    public void testRequest_EmitsOnlyWhatWasRequested() {
+        queue.addAll(Arrays.asList("value1", "value2", "value3"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        assertTrue(subscriber.mElements.isEmpty());
+        subscriber.mSubscription.request(2);
+        assertEquals(Arrays.asList("value1", "value2"), subscriber.mElements);
+        assertEquals(1, queue.size());
+        subscriber.mSubscription.request(1);
+        assertEquals(Arrays.asList("value1", "value2", "value3"), subscriber.mElements);
+        assertEquals(0, queue.size());
+        subscriber.mSubscription.cancel();
+        assertEquals(0, manager.getInFlightCount());
+    }
+
+    @Test
+    public void testRequest_EmptyQueue_EmitsOnceElementsAreAdded() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.mSubscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.mElements.isEmpty());
+        queue.offer("value1");
+        queue.addAll(Arrays.asList("value2", "value3"));
+        assertEquals(Arrays.asList("value1", "value2", "value3"), subscriber.mElements);
+        assertTrue(queue.isEmpty());
+        subscriber.mSubscription.cancel();
+    }
+
+    @Test
+    public void testRequest_BatchSize_SettlesTheBatchOnceEmitted() throws InterruptedException {
+        Publisher<String> shortLeases = queue.asPublisher(DIRECT, 2, 50, TimeUnit.MILLISECONDS);
+        queue.addAll(Arrays.asList("value1", "value2", "value3"));
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        shortLeases.subscribe(subscriber);
+        subscriber.mSubscription.request(2);
+        assertEquals(Arrays.asList("value1", "value2"), subscriber.mElements);
+        assertEquals(0, manager.getInFlightCount());
+        Thread.sleep(100);
+        List<SQLiteQueueLease<String>> leases = queue.reserve(10, 1, TimeUnit.MINUTES);
+        assertEquals(1, leases.size());
+        assertEquals("value3", leases.get(0).getElement());
+        subscriber.mSubscription.cancel();
+    }
+
+    @Test
+    public void testSubscribe_DoesNotSubscribeToTheEventBus() {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.mSubscription.request(1);
+        assertFalse(queue.getEventBus().hasSubscribers());
+        queue.offer("value1");
+        assertEquals(Collections.singletonList("value1"), subscriber.mElements);
+        subscriber.mSubscription.cancel();
+    }
+
+    @Test
+    public void testCancel_GivesBackLeasedElementsThatWereNotEmitted() {
+        queue.addAll(Arrays.asList("value1", "value2", "value3"));
+        RecordingSubscriber subscriber = new RecordingSubscriber() {
+            @Override
+            public void onNext(String s) {
+                super.onNext(s);
+                mSubscription.cancel();
+            }
+        };
+        publisher.subscribe(subscriber);
+        subscriber.mSubscription.request(3);
+        assertEquals(Collections.singletonList("value1"), subscriber.mElements);
+        assertEquals(0, manager.getInFlightCount());
+        assertEquals("value2", queue.poll());
+        assertEquals("value3", queue.poll());
+        subscriber.mSubscription.request(1);
+        assertEquals(1, subscriber.mElements.size());
+    }
+
+    @Test
+    public void testOnNextThrowing_GivesTheElementBackAndSignalsError() {
+        queue.addAll(Arrays.asList("value1", "value2"));
+        RecordingSubscriber subscriber = new RecordingSubscriber() {
+            @Override
+            public void onNext(String s) {
+                throw new IllegalStateException("Downstream failed");
+            }
+        };
+        publisher.subscribe(subscriber);
+        subscriber.mSubscription.request(2);
+        assertTrue(subscriber.mError instanceof IllegalStateException);
+        assertEquals(2, queue.size());
+        assertEquals("value1", queue.poll());
+    }
+
+    @Test
+    public void testRequest_NonPositive_SignalsError() {
+        queue.offer("value1");
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.mSubscription.request(0);
+        assertTrue(subscriber.mError instanceof IllegalArgumentException);
+        assertTrue(subscriber.mElements.isEmpty());
+        assertEquals("value1", queue.peek());
+        assertNull(subscriber.mCompleted);
+    }
+
+    private static class RecordingSubscriber implements Subscriber<String> {
+        final List<String> mElements = new ArrayList<>();
+        Subscription mSubscription;
+        Throwable mError;
+        Boolean mCompleted;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            mSubscription = s;
+        }
+
+        @Override
+        public void onNext(String s) {
+            mElements.add(s);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            mError = t;
+        }
+
+        @Override
+        public void onComplete() {
+            mCompleted = true;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A test class for the registry of named queues.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SQLiteQueueRegistryTest {
+    private QueueObjectConverter<String> mConverter = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    private SQLiteQueueRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new SQLiteQueueRegistry(InstrumentationRegistry.getTargetContext());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        registry.getQueue("crashes", mConverter).clear();
+        registry.getQueue("pings", mConverter).clear();
+        registry.close();
+    }
+
+    @Test
+    public void testGetQueue_SameNameReturnsSameQueue() {
+        assertSame(registry.getQueue("crashes", mConverter), registry.getQueue("crashes", mConverter));
+    }
+
+    @Test
+    public void testGetQueue_NamedQueuesAreIsolated() {
+        SQLitePersistentQueue<String> crashes = registry.getQueue("crashes", mConverter);
+        SQLitePersistentQueue<String> pings = registry.getQueue("pings", mConverter);
+        crashes.offer("crash1");
+        pings.offer("ping1");
+        pings.offer("ping2");
+        assertEquals(1, crashes.size());
+        assertEquals(2, pings.size());
+        assertEquals("crash1", crashes.poll());
+        assertEquals("ping1", pings.poll());
+    }
+
+    @Test
+    public void testClosingOneQueue_KeepsTheSharedConnectionOpen() throws IOException {
+        SQLitePersistentQueue<String> crashes = registry.getQueue("crashes", mConverter);
+        SQLitePersistentQueue<String> pings = registry.getQueue("pings", mConverter);
+        crashes.close();
+        pings.offer("ping1");
+        assertEquals("ping1", pings.poll());
+    }
+
+    @Test
+    public void testGetQueue_RowsSurviveReopeningTheRegistry() throws IOException {
+        registry.getQueue("crashes", mConverter).offer("crash1");
+        registry.close();
+        registry = new SQLiteQueueRegistry(InstrumentationRegistry.getTargetContext());
+        assertEquals("crash1", registry.getQueue("crashes", mConverter).peek());
+    }
+
+    @Test
+    public void testGetQueue_InvalidName_mustThrow() {
+        try {
+            registry.getQueue("drop table", mConverter);
+            fail("Names that are not plain identifiers must be rejected");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testGetQueue_NameOfAnotherQueuesLeaseTable_mustThrow() {
+        registry.getQueue("foo", mConverter);
+        try {
+            registry.getQueue("foo" + SQLiteQueueTable.IN_FLIGHT_TABLE_SUFFIX, mConverter);
+            fail("A queue name must not resolve to another queue's lease table");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testGetQueue_NamesDifferingInCase_ReturnTheSameQueue() {
+        SQLitePersistentQueue<String> queue = registry.getQueue("Pings", mConverter);
+        assertSame(queue, registry.getQueue("pings", mConverter));
+        try {
+            registry.getBlockingQueue("PINGS", mConverter, 10);
+            fail("A plain queue cannot be handed out as a blocking one under another case");
+        } catch (IllegalStateException ignored) {
+        }
+        try {
+            registry.getQueue("foo" + SQLiteQueueTable.IN_FLIGHT_TABLE_SUFFIX.toUpperCase(Locale.US), mConverter);
+            fail("Reserved suffixes must be rejected whatever their case");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testGetBlockingQueue_NameOpenAsPlainQueue_mustThrow() {
+        registry.getQueue("pings", mConverter);
+        try {
+            registry.getBlockingQueue("pings", mConverter, 10);
+            fail("A plain queue cannot be handed out as a blocking one");
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Test
+    public void testGetBlockingQueue_SharesTheNamedTable() {
+        SQLitePersistentBlockingQueue<String> crashes = registry.getBlockingQueue("crashes", mConverter, 10);
+        crashes.offer("crash1");
+        assertSame(crashes, registry.getQueue("crashes", mConverter));
+        assertTrue(registry.getQueue("crashes", mConverter).contains("crash1"));
+    }
+}
@@ -0,0 +1,124 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * An instrumentation test for the schema migrations of the sqlite queue db helper.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SQLiteQueueDbHelperTest {
+    private static final String SQL_CREATE_ENTRIES_V1 =
+            "CREATE TABLE " + SQLiteQueueTable.TABLE_NAME + " (" +
+                    SQLiteQueueTable._ID + " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL," +
+                    SQLiteQueueTable.COLUMN_NAME_VALUE + " TEXT )";
+
+    private SQLiteDatabase db;
+    private SQLiteQueueDbHelper helper;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        helper = new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext());
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testUpgradeFromVersion1_KeepsRows() {
+        createVersion1WithRows();
+
+        helper.onUpgrade(db, 1, 2);
+
+        Cursor c = db.rawQuery("SELECT " + SQLiteQueueTable.COLUMN_NAME_VALUE + " FROM " +
+                SQLiteQueueTable.TABLE_NAME + " ORDER BY " + SQLiteQueueTable._ID, null);
+        assertEquals(2, c.getCount());
+        c.moveToFirst();
+        assertEquals("value1", c.getString(0));
+        c.moveToNext();
+        assertEquals("value2", c.getString(0));
+        c.close();
+    }
+
+    @Test
+    public void testDataMigrations_HashRowsStoredBeforeUpgrade() {
+        createVersion1WithRows();
+        helper.onUpgrade(db, 1, 2);
+
+        SQLiteQueueDbHelper.runDataMigrations(db);
+
+        Cursor c = db.rawQuery("SELECT " + SQLiteQueueTable.COLUMN_NAME_VALUE + ", " +
+                SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + " FROM " + SQLiteQueueTable.TABLE_NAME, null);
+        assertEquals(2, c.getCount());
+        while (c.moveToNext()) {
+            assertFalse(c.isNull(1));
+            assertEquals(SQLiteQueueHash.hash(c.getString(0)), c.getLong(1));
+        }
+        c.close();
+    }
+
+    @Test
+    public void testUpgradeFromVersion1_CreatesBlobTable() {
+        createVersion1WithRows();
+        helper.onUpgrade(db, 1, 3);
+
+        db.execSQL("INSERT INTO " + SQLiteQueueTable.BLOB_TABLE_NAME + " (" +
+                SQLiteQueueTable.COLUMN_NAME_VALUE + ") VALUES (x'0102')");
+        Cursor c = db.rawQuery("SELECT " + SQLiteQueueTable.COLUMN_NAME_VALUE + " FROM " +
+                SQLiteQueueTable.BLOB_TABLE_NAME, null);
+        assertEquals(1, c.getCount());
+        c.moveToFirst();
+        assertArrayEquals(new byte[]{1, 2}, c.getBlob(0));
+        c.close();
+    }
+
+    @Test
+    public void testUpgradeFromVersion3_CreatesInFlightTables() {
+        createVersion1WithRows();
+        helper.onUpgrade(db, 1, 4);
+
+        Cursor c = db.rawQuery("SELECT COUNT(*) FROM " + SQLiteQueueTable.TABLE_NAME +
+                SQLiteQueueTable.IN_FLIGHT_TABLE_SUFFIX, null);
+        c.moveToFirst();
+        assertEquals(0, c.getInt(0));
+        c.close();
+        c = db.rawQuery("SELECT COUNT(*) FROM " + SQLiteQueueTable.BLOB_TABLE_NAME +
+                SQLiteQueueTable.IN_FLIGHT_TABLE_SUFFIX, null);
+        c.moveToFirst();
+        assertEquals(0, c.getInt(0));
+        c.close();
+    }
+
+    @Test
+    public void testConfig_EnablesWriteAheadLogging() {
+        SQLiteQueueDbHelper walHelper = new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext(),
+                new SQLiteQueueConfig.Builder().build());
+        Cursor c = walHelper.getWritableDatabase().rawQuery("PRAGMA journal_mode", null);
+        c.moveToFirst();
+        assertEquals("wal", c.getString(0).toLowerCase());
+        c.close();
+        walHelper.close();
+    }
+
+    private void createVersion1WithRows() {
+        db.execSQL(SQL_CREATE_ENTRIES_V1);
+        db.execSQL("INSERT INTO " + SQLiteQueueTable.TABLE_NAME + " (" +
+                SQLiteQueueTable.COLUMN_NAME_VALUE + ") VALUES ('value1'), ('value2')");
+    }
+}
@@ -4,12 +4,16 @@ import android.content.Context;
 import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
+import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -78,6 +82,131 @@ public class SQLiteQueueTableManagerTest {
         assertEquals(0, manager.getCount());
     }
 
+    @Test
+    public void testGetCount_SeededFromExistingRowsOnOpen() throws IOException {
+        manager.insert("test");
+        manager.insert("test1");
+        manager.insert("test2");
+        SQLiteQueueTableManager other = getDbManager();
+        assertEquals(3, other.getCount());
+        other.close();
+    }
+
+    @Test
+    public void testGetCount_TracksRemoveByValue() throws IOException {
+        manager.insert("test");
+        manager.insert("test");
+        manager.insert("test1");
+        manager.remove("test");
+        assertEquals(1, manager.getCount());
+        manager.remove("not there");
+        assertEquals(1, manager.getCount());
+    }
+
+    @Test
+    public void testInsertAll_InsertsInOrderAcrossBatches() {
+        int inserted = manager.insertAll(Arrays.asList("a", "b", "c", "d", "e"), 2);
+        assertEquals(5, inserted);
+        assertEquals(5, manager.getCount());
+        assertEquals("a", manager.removeHead());
+        assertEquals("b", manager.removeHead());
+        assertEquals("c", manager.removeHead());
+        assertEquals("d", manager.removeHead());
+        assertEquals("e", manager.removeHead());
+    }
+
+    @Test
+    public void testRemoveHeadBatch_RemovesLowestRowsInOrder() {
+        manager.insertAll(Arrays.asList("a", "b", "c"), 10);
+        assertEquals(Arrays.asList("a", "b"), manager.removeHead(2));
+        assertEquals(1, manager.getCount());
+        assertEquals(Arrays.asList("c"), manager.removeHead(5));
+        assertTrue(manager.removeHead(5).isEmpty());
+        assertEquals(0, manager.getCount());
+    }
+
+    @Test
+    public void testInsertAll_MustThrowForNonPositiveBatchSize() {
+        try {
+            manager.insertAll(Arrays.asList("a"), 0);
+            fail("Must throw for a batch size below 1");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testContainsAndRemove_FindRowsNotHashedYet() {
+        SQLiteQueueDbHelper helper = new SQLiteQueueDbHelper(InstrumentationRegistry.getTargetContext());
+        helper.getWritableDatabase().execSQL("INSERT INTO " + SQLiteQueueTable.TABLE_NAME + " (" +
+                SQLiteQueueTable.COLUMN_NAME_VALUE + ") VALUES ('legacy')");
+        helper.close();
+        assertTrue(manager.contains("legacy"));
+        assertEquals("legacy", manager.remove("legacy"));
+        assertFalse(manager.contains("legacy"));
+    }
+
+    @Test
+    public void testBlobTable_StoresBytesInOrder() throws IOException {
+        SQLiteQueueTableManager blobManager = getBlobDbManager();
+        try {
+            blobManager.insertBytes(new byte[]{1, 2, 3});
+            blobManager.insertAllBytes(Arrays.asList(new byte[]{0}, new byte[]{(byte) 0xff, 0}), 1);
+            assertEquals(3, blobManager.getCount());
+            assertTrue(blobManager.containsBytes(new byte[]{0}));
+            assertFalse(blobManager.containsBytes(new byte[]{0, 0}));
+            assertArrayEquals(new byte[]{1, 2, 3}, blobManager.getHeadEntry().getBytes());
+            assertTrue(blobManager.removeBytes(new byte[]{0}));
+            assertFalse(blobManager.removeBytes(new byte[]{0}));
+            assertEquals(2, blobManager.getCount());
+            assertArrayEquals(new byte[]{1, 2, 3}, blobManager.removeHeadEntry().getBytes());
+            assertArrayEquals(new byte[]{(byte) 0xff, 0}, blobManager.removeHeadEntry().getBytes());
+            assertNull(blobManager.removeHeadEntry());
+        } finally {
+            blobManager.clear();
+            blobManager.close();
+        }
+    }
+
+    @Test
+    public void testBlobTable_IsSeparateFromTextTable() throws IOException {
+        SQLiteQueueTableManager blobManager = getBlobDbManager();
+        try {
+            manager.insert("test");
+            assertEquals(0, blobManager.getCount());
+        } finally {
+            blobManager.close();
+        }
+    }
+
+    @Test
+    public void testLeaseHeadEntries_MovesRowsInFlightUntilReclaimed() {
+        manager.insertAll(Arrays.asList("a", "b", "c"), 10);
+        List<SQLiteQueueEntry> leased = manager.leaseHeadEntries(2, 0, 42);
+        assertEquals(2, leased.size());
+        assertEquals("a", leased.get(0).getValue());
+        assertEquals(1, manager.getCount());
+        assertEquals(2, manager.getInFlightCount());
+        assertFalse(manager.ack(leased.get(0).getId(), 43));
+        assertTrue(manager.ack(leased.get(0).getId(), 42));
+        assertEquals(1, manager.reclaimExpiredLeases(1));
+        assertEquals(0, manager.getInFlightCount());
+        assertEquals(Arrays.asList("b", "c"), manager.removeHead(5));
+    }
+
+    @Test
+    public void testClear_AlsoDropsLeasedRows() {
+        manager.insert("a");
+        manager.leaseHeadEntries(1, Long.MAX_VALUE, 1);
+        manager.clear();
+        assertEquals(0, manager.getInFlightCount());
+    }
+
+    private SQLiteQueueTableManager getBlobDbManager() {
+        Context appContext = InstrumentationRegistry.getTargetContext();
+        return new SQLiteQueueTableManager(new SQLiteQueueDbHelper(appContext),
+                SQLiteQueueTable.BLOB_TABLE_NAME, true);
+    }
+
     private SQLiteQueueTableManager getDbManager() {
         Context appContext = InstrumentationRegistry.getTargetContext();
         return new SQLiteQueueTableManager(new SQLiteQueueDbHelper(appContext));
@@ -0,0 +1,16 @@
+package com.talview.sqlitepersistentqueue;
+
+/**
+ * Converts queue elements to and from raw bytes, which are stored as a BLOB without any string
+ * encoding.
+ * <p>
+ * The bytes handed to {@link #deserialize(byte[], int, int)} belong to the queue only for the
+ * duration of the call, so wrapping them with {@code ByteBuffer.wrap(bytes, offset, length)} or
+ * passing them to a parser such as a protobuf {@code parseFrom(bytes, offset, length)} avoids
+ * copying them.
+ */
+public interface QueueObjectBinaryConverter<T> {
+    T deserialize(byte[] bytes, int offset, int length);
+
+    byte[] serialize(T queueObject);
+}
@@ -0,0 +1,9 @@
+package com.talview.sqlitepersistentqueue;
+
+/**
+ * Gives the priority a queue element is stored with. Elements with a lower priority are dequeued
+ * first, elements of equal priority in the order they were added.
+ */
+public interface QueueObjectPrioritizer<T> {
+    int getPriority(T queueObject);
+}
@@ -0,0 +1,16 @@
+package com.talview.sqlitepersistentqueue;
+
+import java.util.List;
+
+/**
+ * A subscriber contract for the sqlite change bus that receives bulk additions and removals in
+ * one callback.
+ * <p>
+ * Subscribers that only implement {@link SQLiteBusSubscriber} get an {@code onAdded} or
+ * {@code onRemoved} call for every object instead.
+ */
+public interface SQLiteBatchBusSubscriber<T> extends SQLiteBusSubscriber<T> {
+    void onAddedAll(List<T> objects);
+
+    void onRemovedAll(List<T> objects);
+}
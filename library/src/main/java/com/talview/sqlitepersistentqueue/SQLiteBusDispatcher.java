@@ -0,0 +1,111 @@
+package com.talview.sqlitepersistentqueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers bus events on an {@link Executor} instead of the thread that changed the queue.
+ * <p>
+ * Events are appended to a lock-free queue and drained by a single task at a time, so subscribers
+ * see them one after the other and in the order they happened, however many threads the executor
+ * has. While draining, runs of consecutive added or removed events are merged into one
+ * {@link SQLiteBusPublisher#publishAll(int, List) publishAll}, which batch subscribers receive as
+ * a single callback.
+ */
+class SQLiteBusDispatcher<T> {
+    private final SQLiteBusPublisher<T> mPublisher;
+    private final Executor mExecutor;
+    private final ConcurrentLinkedQueue<Event<T>> mPending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+    private final Runnable mDrainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    SQLiteBusDispatcher(SQLiteBusPublisher<T> publisher, Executor executor) {
+        mPublisher = publisher;
+        mExecutor = executor;
+    }
+
+    void dispatch(int event, T object) {
+        enqueue(new Event<>(event, object, null));
+    }
+
+    void dispatchAll(int event, List<T> objects) {
+        enqueue(new Event<>(event, null, objects));
+    }
+
+    private void enqueue(Event<T> event) {
+        mPending.offer(event);
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            try {
+                mExecutor.execute(mDrainTask);
+            } catch (RuntimeException e) {
+                // Leave the event pending for the next dispatch to deliver.
+                mDrainScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        do {
+            try {
+                List<T> run = new ArrayList<>();
+                int runEvent = 0;
+                Event<T> event;
+                while ((event = mPending.poll()) != null) {
+                    if (event.mEvent != runEvent && !run.isEmpty()) {
+                        publishRun(runEvent, run);
+                        run = new ArrayList<>();
+                    }
+                    if (event.mEvent == SQLiteBusPublisher.EVENT_CLEARED) {
+                        mPublisher.publish(SQLiteBusPublisher.EVENT_CLEARED, null);
+                        runEvent = 0;
+                        continue;
+                    }
+                    runEvent = event.mEvent;
+                    if (event.mObjects != null) {
+                        run.addAll(event.mObjects);
+                    } else {
+                        run.add(event.mObject);
+                    }
+                }
+                if (!run.isEmpty()) {
+                    publishRun(runEvent, run);
+                }
+            } finally {
+                // Also when a subscriber threw, so that the next event starts a new drain.
+                mDrainScheduled.set(false);
+            }
+            // An event offered after the last poll but before the flag was cleared did not
+            // schedule a drain of its own, so pick it up here.
+        } while (!mPending.isEmpty() && mDrainScheduled.compareAndSet(false, true));
+    }
+
+    private void publishRun(int event, List<T> run) {
+        if (run.size() == 1) {
+            mPublisher.publish(event, run.get(0));
+        } else {
+            mPublisher.publishAll(event, Collections.unmodifiableList(run));
+        }
+    }
+
+    private static class Event<T> {
+        final int mEvent;
+        final T mObject;
+        final List<T> mObjects;
+
+        Event(int event, T object, List<T> objects) {
+            mEvent = event;
+            mObject = object;
+            mObjects = objects;
+        }
+    }
+}
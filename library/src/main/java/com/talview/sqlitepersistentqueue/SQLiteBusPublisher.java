@@ -2,14 +2,17 @@ package com.talview.sqlitepersistentqueue;
 
 import android.support.annotation.VisibleForTesting;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A class used to publish sqlite change event.
+ * <p>
+ * Subscribers are kept in a copy-on-write list, so publishing never locks and subscribers can come
+ * and go while events are being published from other threads.
  */
 class SQLiteBusPublisher<T> {
-    private List<SQLiteBusSubscriber<T>> subscribers = new ArrayList<>();
+    private final CopyOnWriteArrayList<SQLiteBusSubscriber<T>> subscribers = new CopyOnWriteArrayList<>();
     static final int EVENT_ADDED = 1002024;
     static final int EVENT_REMOVED = 1002025;
     static final int EVENT_CLEARED = 1002026;
@@ -36,9 +39,42 @@ class SQLiteBusPublisher<T> {
         }
     }
 
+    /**
+     * Publishes an event for several objects at once. Subscribers implementing
+     * {@link SQLiteBatchBusSubscriber} get a single callback, others get one per object.
+     */
+    @SuppressWarnings("unchecked")
+    void publishAll(int event, List<T> objects) {
+        switch (event) {
+            case EVENT_ADDED:
+                for (SQLiteBusSubscriber<T> subscriber : subscribers) {
+                    if (subscriber instanceof SQLiteBatchBusSubscriber) {
+                        ((SQLiteBatchBusSubscriber<T>) subscriber).onAddedAll(objects);
+                    } else {
+                        for (T object : objects) {
+                            subscriber.onAdded(object);
+                        }
+                    }
+                }
+                break;
+            case EVENT_REMOVED:
+                for (SQLiteBusSubscriber<T> subscriber : subscribers) {
+                    if (subscriber instanceof SQLiteBatchBusSubscriber) {
+                        ((SQLiteBatchBusSubscriber<T>) subscriber).onRemovedAll(objects);
+                    } else {
+                        for (T object : objects) {
+                            subscriber.onRemoved(object);
+                        }
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Un supported event value");
+        }
+    }
+
     void subscribe(SQLiteBusSubscriber<T> subscriber) {
-        if (!subscribers.contains(subscriber))
-            subscribers.add(subscriber);
+        subscribers.addIfAbsent(subscriber);
     }
 
     void unsubscribe(SQLiteBusSubscriber<T> subscriber) {
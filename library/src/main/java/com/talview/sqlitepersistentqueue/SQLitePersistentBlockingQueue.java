@@ -0,0 +1,272 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueConfig;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A persistent {@link BlockingQueue} implementation using Sqlite.
+ * <p>
+ * Consumers blocked in {@link #take()} or {@link #poll(long, TimeUnit)} are woken up whenever an
+ * element is added through this instance, and producers blocked in {@link #put(Object)} whenever
+ * an element is removed through it. Rows written to the table by other queue instances do not
+ * wake anybody up.
+ * <p>
+ * Like {@link java.util.concurrent.LinkedBlockingQueue}, producers and consumers wait on separate
+ * locks, since inserts append at the tail and polls delete at the head. A producer serializing and
+ * inserting an element never holds up a consumer deserializing another one, and each side only
+ * signals the other after releasing its own lock. Elements given back through
+ * {@link #nack(SQLiteQueueLease)} or expired leases skip the capacity check.
+ */
+public class SQLitePersistentBlockingQueue<E> extends SQLitePersistentQueue<E> implements BlockingQueue<E> {
+    private final int mCapacity;
+    private final ReentrantLock mPutLock = new ReentrantLock();
+    private final Condition mNotFull = mPutLock.newCondition();
+    private final ReentrantLock mTakeLock = new ReentrantLock();
+    private final Condition mNotEmpty = mTakeLock.newCondition();
+
+    /**
+     * Creates an unbounded blocking queue.
+     */
+    public SQLitePersistentBlockingQueue(@NonNull Context context,
+                                         @NonNull QueueObjectConverter<E> objectConverter) {
+        this(context, objectConverter, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a blocking queue that holds at most {@code capacity} elements.
+     */
+    public SQLitePersistentBlockingQueue(@NonNull Context context,
+                                         @NonNull QueueObjectConverter<E> objectConverter,
+                                         int capacity) {
+        this(context, objectConverter, capacity, SQLiteQueueConfig.PLATFORM_DEFAULTS);
+    }
+
+    /**
+     * Creates a blocking queue that holds at most {@code capacity} elements, with its database
+     * opened using the given settings.
+     */
+    public SQLitePersistentBlockingQueue(@NonNull Context context,
+                                         @NonNull QueueObjectConverter<E> objectConverter,
+                                         int capacity,
+                                         @NonNull SQLiteQueueConfig config) {
+        super(context, objectConverter, config);
+        mCapacity = checkCapacity(capacity);
+    }
+
+    /**
+     * Creates a blocking queue that holds at most {@code capacity} elements and stores them as raw
+     * bytes, with its database opened using the given settings.
+     */
+    public SQLitePersistentBlockingQueue(@NonNull Context context,
+                                         @NonNull QueueObjectBinaryConverter<E> objectConverter,
+                                         int capacity,
+                                         @NonNull SQLiteQueueConfig config) {
+        super(SQLiteQueueCodec.binary(objectConverter), blobTableManager(context, config));
+        mCapacity = checkCapacity(capacity);
+    }
+
+    /**
+     * Creates a blocking queue that holds at most {@code capacity} elements over an already opened
+     * table, for example one reached through a
+     * {@link com.talview.sqlitepersistentqueue.db.SQLiteQueueStorage} other than an Android
+     * database. Closing the queue closes the manager.
+     */
+    public SQLitePersistentBlockingQueue(@NonNull QueueObjectConverter<E> objectConverter,
+                                         @NonNull SQLiteQueueTableManager manager,
+                                         int capacity) {
+        super(objectConverter, manager);
+        mCapacity = checkCapacity(capacity);
+    }
+
+    SQLitePersistentBlockingQueue(@NonNull SQLiteQueueCodec<E> codec,
+                                  @NonNull SQLiteQueueTableManager manager,
+                                  int capacity) {
+        super(codec, manager);
+        mCapacity = checkCapacity(capacity);
+    }
+
+    private static int checkCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+        }
+        return capacity;
+    }
+
+    @Override
+    public boolean add(E e) {
+        checkNotNull(e);
+        mPutLock.lock();
+        try {
+            if (size() >= mCapacity) {
+                throw new IllegalStateException("Queue full");
+            }
+            super.add(e);
+        } finally {
+            mPutLock.unlock();
+        }
+        signalNotEmpty();
+        return true;
+    }
+
+    @Override
+    public boolean addAll(@NonNull Collection<? extends E> c) {
+        boolean added;
+        mPutLock.lock();
+        try {
+            if ((long) size() + c.size() > mCapacity) {
+                throw new IllegalStateException("Queue full");
+            }
+            added = super.addAll(c);
+        } finally {
+            mPutLock.unlock();
+        }
+        if (added)
+            signalNotEmpty();
+        return added;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        checkNotNull(e);
+        boolean offered;
+        mPutLock.lock();
+        try {
+            offered = size() < mCapacity && super.offer(e);
+        } finally {
+            mPutLock.unlock();
+        }
+        if (offered)
+            signalNotEmpty();
+        return offered;
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        checkNotNull(e);
+        long nanos = unit.toNanos(timeout);
+        boolean offered;
+        mPutLock.lockInterruptibly();
+        try {
+            while (size() >= mCapacity) {
+                if (nanos <= 0)
+                    return false;
+                nanos = mNotFull.awaitNanos(nanos);
+            }
+            offered = super.offer(e);
+        } finally {
+            mPutLock.unlock();
+        }
+        if (offered)
+            signalNotEmpty();
+        return offered;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        checkNotNull(e);
+        mPutLock.lockInterruptibly();
+        try {
+            while (size() >= mCapacity) {
+                mNotFull.await();
+            }
+            if (!super.offer(e)) {
+                throw new RuntimeException("Failed to add element e = " + e.toString());
+            }
+        } finally {
+            mPutLock.unlock();
+        }
+        signalNotEmpty();
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e;
+        mTakeLock.lockInterruptibly();
+        try {
+            while ((e = poll()) == null) {
+                mNotEmpty.await();
+            }
+        } finally {
+            mTakeLock.unlock();
+        }
+        signalNotFull();
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        E e;
+        mTakeLock.lockInterruptibly();
+        try {
+            while ((e = poll()) == null) {
+                if (nanos <= 0)
+                    return null;
+                nanos = mNotEmpty.awaitNanos(nanos);
+            }
+        } finally {
+            mTakeLock.unlock();
+        }
+        signalNotFull();
+        return e;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return mCapacity == Integer.MAX_VALUE ? Integer.MAX_VALUE : mCapacity - size();
+    }
+
+    /**
+     * Wakes up consumers, unless called from a producer holding the put lock, which does so once
+     * it has released it.
+     */
+    @Override
+    void onElementsAdded() {
+        if (!mPutLock.isHeldByCurrentThread())
+            signalNotEmpty();
+        super.onElementsAdded();
+    }
+
+    /**
+     * Wakes up producers, unless called from a consumer holding the take lock, which does so once
+     * it has released it.
+     */
+    @Override
+    void onElementsRemoved() {
+        if (!mTakeLock.isHeldByCurrentThread())
+            signalNotFull();
+    }
+
+    private void signalNotEmpty() {
+        mTakeLock.lock();
+        try {
+            mNotEmpty.signalAll();
+        } finally {
+            mTakeLock.unlock();
+        }
+    }
+
+    private void signalNotFull() {
+        mPutLock.lock();
+        try {
+            mNotFull.signalAll();
+        } finally {
+            mPutLock.unlock();
+        }
+    }
+
+    private static void checkNotNull(Object e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+    }
+}
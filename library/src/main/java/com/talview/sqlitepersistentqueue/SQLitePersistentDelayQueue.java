@@ -0,0 +1,254 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueConfig;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueEntry;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A persistent delay queue implementation using Sqlite, the persistent counterpart of
+ * {@link java.util.concurrent.DelayQueue}.
+ * <p>
+ * Every row carries the time from which it may be dequeued. {@link #poll()} and friends only
+ * return rows whose time has come, earliest first, and {@link #take()} sleeps until the earliest
+ * row becomes visible. Elements are visible right away unless they are offered with
+ * {@link #offerDelayed(Object, long, TimeUnit)} or {@link #offerAt(Object, long)}, or implement
+ * {@link Delayed}.
+ * <p>
+ * Times are wall clock milliseconds so that delays carry over restarts. {@link #peek()} and
+ * {@link #element()} return the earliest row whether it is visible yet or not, and
+ * {@link #size()} counts all rows.
+ */
+public class SQLitePersistentDelayQueue<E> extends SQLitePersistentQueue<E> implements BlockingQueue<E> {
+    private final ReentrantLock mLock = new ReentrantLock();
+    private final Condition mAvailable = mLock.newCondition();
+
+    public SQLitePersistentDelayQueue(@NonNull Context context,
+                                      @NonNull QueueObjectConverter<E> objectConverter) {
+        this(context, objectConverter, SQLiteQueueConfig.PLATFORM_DEFAULTS);
+    }
+
+    /**
+     * Creates a delay queue whose database is opened with the given settings.
+     */
+    public SQLitePersistentDelayQueue(@NonNull Context context,
+                                      @NonNull QueueObjectConverter<E> objectConverter,
+                                      @NonNull SQLiteQueueConfig config) {
+        this(SQLiteQueueCodec.text(objectConverter),
+                delayTableManager(context, config, SQLiteQueueTable.DELAY_TABLE_NAME, false));
+    }
+
+    /**
+     * Creates a delay queue that stores its elements as raw bytes.
+     */
+    public SQLitePersistentDelayQueue(@NonNull Context context,
+                                      @NonNull QueueObjectBinaryConverter<E> objectConverter) {
+        this(context, objectConverter, SQLiteQueueConfig.PLATFORM_DEFAULTS);
+    }
+
+    /**
+     * Creates a delay queue that stores its elements as raw bytes, with its database opened using
+     * the given settings.
+     */
+    public SQLitePersistentDelayQueue(@NonNull Context context,
+                                      @NonNull QueueObjectBinaryConverter<E> objectConverter,
+                                      @NonNull SQLiteQueueConfig config) {
+        this(SQLiteQueueCodec.binary(objectConverter),
+                delayTableManager(context, config, SQLiteQueueTable.DELAY_BLOB_TABLE_NAME, true));
+    }
+
+    @VisibleForTesting
+    SQLitePersistentDelayQueue(@NonNull QueueObjectConverter<E> objectConverter,
+                               @NonNull SQLiteQueueTableManager manager) {
+        this(SQLiteQueueCodec.text(objectConverter), manager);
+    }
+
+    SQLitePersistentDelayQueue(@NonNull SQLiteQueueCodec<E> codec,
+                               @NonNull SQLiteQueueTableManager manager) {
+        super(codec, manager);
+        if (!SQLiteQueueTable.COLUMN_NAME_VISIBLE_AT.equals(manager.getOrderColumn())) {
+            throw new IllegalArgumentException("Table " + manager.getTableName() + " is not a delay table");
+        }
+    }
+
+    private static SQLiteQueueTableManager delayTableManager(Context context, SQLiteQueueConfig config,
+                                                             String tableName, boolean blobValues) {
+        return orderedTableManager(context, config, tableName, blobValues, SQLiteQueueTable.COLUMN_NAME_VISIBLE_AT);
+    }
+
+    /**
+     * Inserts the element so that it only becomes visible once the delay has elapsed.
+     *
+     * @return true if the element was added.
+     */
+    public boolean offerDelayed(E e, long delay, @NonNull TimeUnit unit) {
+        return offerAt(e, System.currentTimeMillis() + unit.toMillis(delay));
+    }
+
+    /**
+     * Inserts the element so that it only becomes visible at the given wall clock time, in
+     * milliseconds since the epoch.
+     *
+     * @return true if the element was added.
+     */
+    public boolean offerAt(E e, long visibleAtMillis) {
+        checkNotNull(e);
+        flush();
+        if (getCodec().insert(getTableManager(), e, visibleAtMillis) == -1)
+            return false;
+        notifyAdded(e);
+        return true;
+    }
+
+    @Override
+    public boolean add(E e) {
+        checkNotNull(e);
+        return super.add(e);
+    }
+
+    @Override
+    public boolean offer(E e) {
+        checkNotNull(e);
+        return super.offer(e);
+    }
+
+    /**
+     * The queue is unbounded, so this never waits.
+     */
+    @Override
+    public boolean offer(E e, long timeout, @NonNull TimeUnit unit) {
+        return offer(e);
+    }
+
+    /**
+     * The queue is unbounded, so this never blocks.
+     */
+    @Override
+    public void put(E e) {
+        if (!offer(e)) {
+            throw new RuntimeException("Failed to add element e = " + e.toString());
+        }
+    }
+
+    /**
+     * Retrieves and removes the earliest visible element, waiting until one becomes visible.
+     */
+    @Override
+    public E take() throws InterruptedException {
+        mLock.lockInterruptibly();
+        try {
+            E e;
+            while ((e = poll()) == null) {
+                long visibleAt = getTableManager().getHeadOrderKey();
+                if (visibleAt == Long.MAX_VALUE)
+                    mAvailable.await();
+                else
+                    mAvailable.awaitNanos(nanosUntil(visibleAt));
+            }
+            return e;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the earliest visible element, waiting up to the given time for one to
+     * become visible.
+     */
+    @Override
+    public E poll(long timeout, @NonNull TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        mLock.lockInterruptibly();
+        try {
+            E e;
+            while ((e = poll()) == null) {
+                if (nanos <= 0)
+                    return null;
+                long visibleAt = getTableManager().getHeadOrderKey();
+                long wait = visibleAt == Long.MAX_VALUE ? nanos : Math.min(nanos, nanosUntil(visibleAt));
+                long remaining = mAvailable.awaitNanos(wait);
+                nanos -= wait - remaining;
+            }
+            return e;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Elements that implement {@link Delayed} are stored with their delay, any other element is
+     * visible right away.
+     */
+    @Override
+    long insertElement(E e) {
+        return getCodec().insert(getTableManager(), e, visibleAt(e, System.currentTimeMillis()));
+    }
+
+    @Override
+    long[] orderKeys(List<E> elements) {
+        long now = System.currentTimeMillis();
+        long[] visibleAt = new long[elements.size()];
+        for (int i = 0; i < visibleAt.length; i++) {
+            visibleAt[i] = visibleAt(elements.get(i), now);
+        }
+        return visibleAt;
+    }
+
+    @Override
+    List<SQLiteQueueEntry> removeHeadEntries(int maxElements) {
+        return getTableManager().removeHeadEntries(maxElements, System.currentTimeMillis());
+    }
+
+    @Override
+    List<SQLiteQueueEntry> leaseHeadEntries(int maxElements, long leaseExpiresAt, long leaseToken) {
+        return getTableManager().leaseHeadEntries(maxElements, System.currentTimeMillis(), leaseExpiresAt, leaseToken);
+    }
+
+    @Override
+    void onElementsAdded() {
+        mLock.lock();
+        try {
+            mAvailable.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+        super.onElementsAdded();
+    }
+
+    private static long visibleAt(Object e, long now) {
+        if (e instanceof Delayed)
+            return now + ((Delayed) e).getDelay(TimeUnit.MILLISECONDS);
+        return now;
+    }
+
+    /**
+     * Returns how long to wait for the given time, at least a millisecond so a row that is about to
+     * become visible is not spun on.
+     */
+    private static long nanosUntil(long visibleAtMillis) {
+        long millis = Math.max(1, visibleAtMillis - System.currentTimeMillis());
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static void checkNotNull(Object e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+    }
+}
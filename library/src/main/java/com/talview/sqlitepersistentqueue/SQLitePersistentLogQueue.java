@@ -0,0 +1,292 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.support.annotation.NonNull;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueLogConfig;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueSegmentLog;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A persistent queue stored in a {@link SQLiteQueueSegmentLog} rather than in a table, for
+ * producers that outrun one row insert per element. Adding an element is a sequential append to
+ * a file and polling one moves a head position, so neither touches a B-tree.
+ * <p>
+ * The price is that elements can only leave from the head: there are no leases, priorities or
+ * delays, {@link #remove(Object)} is not supported and {@link #contains(Object)} scans the log.
+ * Elements may not be null.
+ */
+public class SQLitePersistentLogQueue<E> extends AbstractQueue<E> implements Closeable {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private final QueueObjectBinaryConverter<E> mConverter;
+    private final SQLiteQueueSegmentLog mLog;
+    private final SQLitePersistentQueueBus<E> mQueueEventBus = new SQLitePersistentQueueBus<>();
+
+    /**
+     * Opens the queue stored in the given directory, for example
+     * {@code new File(context.getFilesDir(), "events")}, creating it if needed.
+     */
+    public SQLitePersistentLogQueue(@NonNull File directory,
+                                    @NonNull QueueObjectConverter<E> objectConverter) {
+        this(directory, objectConverter, new SQLiteQueueLogConfig.Builder().build());
+    }
+
+    /**
+     * Opens the queue stored in the given directory with the given segment settings, storing
+     * elements as UTF-8 text.
+     */
+    public SQLitePersistentLogQueue(@NonNull File directory,
+                                    @NonNull QueueObjectConverter<E> objectConverter,
+                                    @NonNull SQLiteQueueLogConfig config) {
+        this(directory, utf8(objectConverter), config);
+    }
+
+    /**
+     * Opens the queue stored in the given directory, storing elements as raw bytes.
+     */
+    public SQLitePersistentLogQueue(@NonNull File directory,
+                                    @NonNull QueueObjectBinaryConverter<E> objectConverter) {
+        this(directory, objectConverter, new SQLiteQueueLogConfig.Builder().build());
+    }
+
+    /**
+     * Opens the queue stored in the given directory with the given segment settings, storing
+     * elements as raw bytes.
+     */
+    public SQLitePersistentLogQueue(@NonNull File directory,
+                                    @NonNull QueueObjectBinaryConverter<E> objectConverter,
+                                    @NonNull SQLiteQueueLogConfig config) {
+        mConverter = objectConverter;
+        try {
+            mLog = new SQLiteQueueSegmentLog(directory, config);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open the queue log in " + directory, e);
+        }
+    }
+
+    private static <E> QueueObjectBinaryConverter<E> utf8(final QueueObjectConverter<E> converter) {
+        return new QueueObjectBinaryConverter<E>() {
+            @Override
+            public E deserialize(byte[] bytes, int offset, int length) {
+                return converter.deserialize(new String(bytes, offset, length, UTF_8));
+            }
+
+            @Override
+            public byte[] serialize(E queueObject) {
+                return converter.serialize(queueObject).getBytes(UTF_8);
+            }
+        };
+    }
+
+    public SQLitePersistentQueueBus<E> getEventBus() {
+        return mQueueEventBus;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(mLog.size(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return mLog.isEmpty();
+    }
+
+    /**
+     * Returns the size in bytes of the log files, which shrinks a whole segment at a time as
+     * elements are polled.
+     */
+    public long getDiskSize() {
+        return mLog.getDiskSize();
+    }
+
+    @Override
+    public boolean offer(E e) {
+        checkNotNull(e);
+        try {
+            mLog.append(mConverter.serialize(e));
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to add element e = " + e.toString(), ex);
+        }
+        mQueueEventBus.onAdded(e);
+        return true;
+    }
+
+    /**
+     * Appends all the elements in a single write per segment.
+     */
+    @Override
+    public boolean addAll(@NonNull Collection<? extends E> c) {
+        if (c == this) {
+            throw new IllegalArgumentException("Cannot add a queue to itself");
+        }
+        List<E> elements = new ArrayList<>(c.size());
+        List<byte[]> records = new ArrayList<>(c.size());
+        for (E e : c) {
+            checkNotNull(e);
+            elements.add(e);
+            records.add(mConverter.serialize(e));
+        }
+        if (records.isEmpty())
+            return false;
+        try {
+            mLog.appendAll(records);
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to add " + records.size() + " elements", ex);
+        }
+        if (mQueueEventBus.hasSubscribers()) {
+            mQueueEventBus.onAddedAll(Collections.unmodifiableList(elements));
+        }
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        byte[] record;
+        try {
+            record = mLog.poll();
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to poll the queue log", ex);
+        }
+        if (record == null)
+            return null;
+        E e = decode(record);
+        mQueueEventBus.onRemoved(e);
+        return e;
+    }
+
+    /**
+     * Retrieves and removes up to {@code maxElements} elements from the head of the queue, moving
+     * the head on disk once for all of them.
+     *
+     * @return the removed elements in queue order, or an empty list if the queue is empty.
+     */
+    @NonNull
+    public List<E> pollBatch(int maxElements) {
+        List<byte[]> records;
+        try {
+            records = mLog.poll(maxElements);
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to poll the queue log", ex);
+        }
+        List<E> elements = new ArrayList<>(records.size());
+        for (byte[] record : records) {
+            elements.add(decode(record));
+        }
+        if (!elements.isEmpty() && mQueueEventBus.hasSubscribers()) {
+            mQueueEventBus.onRemovedAll(Collections.unmodifiableList(elements));
+        }
+        return elements;
+    }
+
+    /**
+     * Removes all the elements of this queue and adds them to the given collection.
+     *
+     * @see java.util.concurrent.BlockingQueue#drainTo(Collection)
+     */
+    public int drainTo(@NonNull Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most {@code maxElements} elements from the head of this queue and adds them to the
+     * given collection, in queue order.
+     *
+     * @return the number of elements transferred.
+     * @see java.util.concurrent.BlockingQueue#drainTo(Collection, int)
+     */
+    public int drainTo(@NonNull Collection<? super E> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException("Cannot drain a queue into itself");
+        }
+        List<E> drained = pollBatch(maxElements);
+        c.addAll(drained);
+        return drained.size();
+    }
+
+    @Override
+    public E peek() {
+        byte[] record;
+        try {
+            record = mLog.peek();
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to read the queue log", ex);
+        }
+        return record == null ? null : decode(record);
+    }
+
+    @Override
+    public void clear() {
+        try {
+            mLog.clear();
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to clear the queue log", ex);
+        }
+        mQueueEventBus.onCleared();
+    }
+
+    /**
+     * Returns an iterator from head to tail that sees elements added while iterating and skips
+     * elements polled meanwhile. It does not support {@link Iterator#remove()}.
+     */
+    @NonNull
+    @Override
+    public Iterator<E> iterator() {
+        final Iterator<byte[]> records = mLog.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return records.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return decode(records.next());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Forces added elements and the head position to disk, for queues not configured to
+     * {@link SQLiteQueueLogConfig.Builder#setSyncOnAppend(boolean) sync on every append}.
+     */
+    public void flush() {
+        try {
+            mLog.sync();
+        } catch (IOException ex) {
+            throw new RuntimeException("Failed to sync the queue log", ex);
+        }
+    }
+
+    private E decode(byte[] record) {
+        return mConverter.deserialize(record, 0, record.length);
+    }
+
+    private static void checkNotNull(Object e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mLog.close();
+    }
+}
@@ -0,0 +1,113 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueConfig;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
+
+import java.util.List;
+
+/**
+ * A persistent priority queue implementation using Sqlite.
+ * <p>
+ * Every element is stored with a priority, taken from the {@link QueueObjectPrioritizer} or given
+ * to {@link #offer(Object, int)}. {@link #poll()}, {@link #peek()} and friends return the element
+ * with the lowest priority, and among equal priorities the oldest one. The head is read from an
+ * index on {@code (priority, _id)}, so dequeuing costs the same however many elements are queued.
+ * <p>
+ * Like {@link java.util.PriorityQueue}, the {@link #iterator()} does not follow priority order; it
+ * returns elements in the order they were added.
+ */
+public class SQLitePersistentPriorityQueue<E> extends SQLitePersistentQueue<E> {
+    private final QueueObjectPrioritizer<E> mPrioritizer;
+
+    public SQLitePersistentPriorityQueue(@NonNull Context context,
+                                         @NonNull QueueObjectConverter<E> objectConverter,
+                                         @NonNull QueueObjectPrioritizer<E> prioritizer) {
+        this(context, objectConverter, prioritizer, SQLiteQueueConfig.PLATFORM_DEFAULTS);
+    }
+
+    /**
+     * Creates a priority queue whose database is opened with the given settings.
+     */
+    public SQLitePersistentPriorityQueue(@NonNull Context context,
+                                         @NonNull QueueObjectConverter<E> objectConverter,
+                                         @NonNull QueueObjectPrioritizer<E> prioritizer,
+                                         @NonNull SQLiteQueueConfig config) {
+        this(SQLiteQueueCodec.text(objectConverter), prioritizer,
+                priorityTableManager(context, config, SQLiteQueueTable.PRIORITY_TABLE_NAME, false));
+    }
+
+    /**
+     * Creates a priority queue that stores its elements as raw bytes.
+     */
+    public SQLitePersistentPriorityQueue(@NonNull Context context,
+                                         @NonNull QueueObjectBinaryConverter<E> objectConverter,
+                                         @NonNull QueueObjectPrioritizer<E> prioritizer) {
+        this(context, objectConverter, prioritizer, SQLiteQueueConfig.PLATFORM_DEFAULTS);
+    }
+
+    /**
+     * Creates a priority queue that stores its elements as raw bytes, with its database opened
+     * using the given settings.
+     */
+    public SQLitePersistentPriorityQueue(@NonNull Context context,
+                                         @NonNull QueueObjectBinaryConverter<E> objectConverter,
+                                         @NonNull QueueObjectPrioritizer<E> prioritizer,
+                                         @NonNull SQLiteQueueConfig config) {
+        this(SQLiteQueueCodec.binary(objectConverter), prioritizer,
+                priorityTableManager(context, config, SQLiteQueueTable.PRIORITY_BLOB_TABLE_NAME, true));
+    }
+
+    @VisibleForTesting
+    SQLitePersistentPriorityQueue(@NonNull QueueObjectConverter<E> objectConverter,
+                                  @NonNull QueueObjectPrioritizer<E> prioritizer,
+                                  @NonNull SQLiteQueueTableManager manager) {
+        this(SQLiteQueueCodec.text(objectConverter), prioritizer, manager);
+    }
+
+    SQLitePersistentPriorityQueue(@NonNull SQLiteQueueCodec<E> codec,
+                                  @NonNull QueueObjectPrioritizer<E> prioritizer,
+                                  @NonNull SQLiteQueueTableManager manager) {
+        super(codec, manager);
+        if (!SQLiteQueueTable.COLUMN_NAME_PRIORITY.equals(manager.getOrderColumn())) {
+            throw new IllegalArgumentException("Table " + manager.getTableName() + " is not a priority table");
+        }
+        mPrioritizer = prioritizer;
+    }
+
+    private static SQLiteQueueTableManager priorityTableManager(Context context, SQLiteQueueConfig config,
+                                                                String tableName, boolean blobValues) {
+        return orderedTableManager(context, config, tableName, blobValues, SQLiteQueueTable.COLUMN_NAME_PRIORITY);
+    }
+
+    /**
+     * Inserts the element with the given priority instead of the one its prioritizer gives.
+     *
+     * @return true if the element was added.
+     */
+    public boolean offer(E e, int priority) {
+        flush();
+        if (getCodec().insert(getTableManager(), e, priority) == -1)
+            return false;
+        notifyAdded(e);
+        return true;
+    }
+
+    @Override
+    long insertElement(E e) {
+        return getCodec().insert(getTableManager(), e, mPrioritizer.getPriority(e));
+    }
+
+    @Override
+    long[] orderKeys(List<E> elements) {
+        long[] priorities = new long[elements.size()];
+        for (int i = 0; i < priorities.length; i++) {
+            priorities[i] = mPrioritizer.getPriority(elements.get(i));
+        }
+        return priorities;
+    }
+}
@@ -2,77 +2,267 @@ package com.talview.sqlitepersistentqueue;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
-import android.support.annotation.VisibleForTesting;
+import android.support.annotation.Nullable;
 
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueConfig;
 import com.talview.sqlitepersistentqueue.db.SQLiteQueueDbHelper;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueEntry;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueInsertException;
 import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
+
+import org.reactivestreams.Publisher;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A persistent queue implementation using Sqlite.
  */
 public class SQLitePersistentQueue<E> implements Queue<E>, Closeable {
-    private QueueObjectConverter<E> mConverter;
-    private SQLiteQueueTableManager mDbManager;
+    /**
+     * The number of rows {@link #addAll(Collection)} commits per transaction by default.
+     */
+    public static final int DEFAULT_INSERT_BATCH_SIZE = 500;
+    private final SQLiteQueueCodec<E> mCodec;
+    private final SQLiteQueueTableManager mDbManager;
     private SQLitePersistentQueueBus<E> mQueueEventBus;
+    private int mInsertBatchSize = DEFAULT_INSERT_BATCH_SIZE;
+    private int mIteratorPageSize = SQLiteQueueIterator.DEFAULT_PAGE_SIZE;
+    private volatile SQLiteQueueWriteBehind<E> mWriteBehind;
+    private volatile SQLiteQueueReadAhead<E> mReadAhead;
+    private final List<Runnable> mElementsAddedListeners = new CopyOnWriteArrayList<>();
     private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+    private static final Random LEASE_TOKENS = new Random();
 
     public SQLitePersistentQueue(@NonNull Context context,
                                  @NonNull QueueObjectConverter<E> objectConverter) {
-        Context mAppContext = context.getApplicationContext();
-        mConverter = objectConverter;
-        mDbManager = new SQLiteQueueTableManager(new SQLiteQueueDbHelper(mAppContext));
-        mQueueEventBus = new SQLitePersistentQueueBus<>();
+        this(context, objectConverter, SQLiteQueueConfig.PLATFORM_DEFAULTS);
+    }
+
+    /**
+     * Creates a queue whose database is opened with the given journal, sync and cache settings.
+     */
+    public SQLitePersistentQueue(@NonNull Context context,
+                                 @NonNull QueueObjectConverter<E> objectConverter,
+                                 @NonNull SQLiteQueueConfig config) {
+        this(SQLiteQueueCodec.text(objectConverter), new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(context.getApplicationContext(), config)));
+    }
+
+    /**
+     * Creates a queue that stores its elements as raw bytes in a BLOB column, skipping the
+     * string conversion of {@link QueueObjectConverter}.
+     */
+    public SQLitePersistentQueue(@NonNull Context context,
+                                 @NonNull QueueObjectBinaryConverter<E> objectConverter) {
+        this(context, objectConverter, SQLiteQueueConfig.PLATFORM_DEFAULTS);
+    }
+
+    /**
+     * Creates a queue that stores its elements as raw bytes, with its database opened using the
+     * given settings.
+     */
+    public SQLitePersistentQueue(@NonNull Context context,
+                                 @NonNull QueueObjectBinaryConverter<E> objectConverter,
+                                 @NonNull SQLiteQueueConfig config) {
+        this(SQLiteQueueCodec.binary(objectConverter), blobTableManager(context, config));
+    }
+
+    /**
+     * Creates a queue over an already opened table, for example one reached through a
+     * {@link com.talview.sqlitepersistentqueue.db.SQLiteQueueStorage} other than an Android
+     * database. Closing the queue closes the manager.
+     */
+    public SQLitePersistentQueue(@NonNull QueueObjectConverter<E> objectConverter,
+                                 @NonNull SQLiteQueueTableManager manager) {
+        this(SQLiteQueueCodec.text(objectConverter), manager);
+    }
+
+    /**
+     * The binary counterpart of
+     * {@link #SQLitePersistentQueue(QueueObjectConverter, SQLiteQueueTableManager)}. The table
+     * must store its values as BLOB.
+     */
+    public SQLitePersistentQueue(@NonNull QueueObjectBinaryConverter<E> objectConverter,
+                                 @NonNull SQLiteQueueTableManager manager) {
+        this(SQLiteQueueCodec.binary(objectConverter), manager);
     }
 
-    @VisibleForTesting
-    SQLitePersistentQueue(@NonNull QueueObjectConverter<E> objectConverter, @NonNull SQLiteQueueTableManager manager) {
-        mConverter = objectConverter;
+    SQLitePersistentQueue(@NonNull SQLiteQueueCodec<E> codec, @NonNull SQLiteQueueTableManager manager) {
+        mCodec = codec;
         mDbManager = manager;
         mQueueEventBus = new SQLitePersistentQueueBus<>();
     }
 
+    static SQLiteQueueTableManager blobTableManager(Context context, SQLiteQueueConfig config) {
+        return new SQLiteQueueTableManager(
+                new SQLiteQueueDbHelper(context.getApplicationContext(), config),
+                SQLiteQueueTable.BLOB_TABLE_NAME, true);
+    }
+
+    /**
+     * Opens a table dequeued by the given order column, creating it if needed.
+     */
+    static SQLiteQueueTableManager orderedTableManager(Context context, SQLiteQueueConfig config,
+                                                       String tableName, boolean blobValues,
+                                                       String orderColumn) {
+        SQLiteQueueDbHelper helper = new SQLiteQueueDbHelper(context.getApplicationContext(), config);
+        SQLiteQueueDbHelper.createQueueTable(helper.getWritableDatabase(), tableName, blobValues, orderColumn);
+        return new SQLiteQueueTableManager(helper, tableName, blobValues, orderColumn);
+    }
+
     public SQLitePersistentQueueBus<E> getEventBus() {
         return mQueueEventBus;
     }
 
+    /**
+     * Sets how many rows {@link #addAll(Collection)} writes per transaction. Larger batches mean
+     * fewer commits, at the cost of holding the write lock for longer.
+     */
+    public void setInsertBatchSize(int insertBatchSize) {
+        if (insertBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, was " + insertBatchSize);
+        }
+        mInsertBatchSize = insertBatchSize;
+    }
+
+    int getInsertBatchSize() {
+        return mInsertBatchSize;
+    }
+
+    SQLiteQueueCodec<E> getCodec() {
+        return mCodec;
+    }
+
+    SQLiteQueueTableManager getTableManager() {
+        return mDbManager;
+    }
+
+    /**
+     * Sets when offered elements are written to disk. With anything but
+     * {@link SQLiteQueueWriteBehindPolicy#FLUSH_ON_OFFER}, {@link #add(Object)} and
+     * {@link #offer(Object)} only buffer the element in memory and a background thread writes the
+     * buffer out in group commits. Every other operation flushes the buffer first, so consumers
+     * still see elements in the order they were offered.
+     * <p>
+     * Elements buffered under the previous policy are written before the new one takes effect.
+     *
+     * @throws RuntimeException if they could not be stored. The previous policy stays in place.
+     */
+    public synchronized void setWriteBehindPolicy(@NonNull SQLiteQueueWriteBehindPolicy policy) {
+        SQLiteQueueWriteBehind<E> previous = mWriteBehind;
+        if (previous != null) {
+            // Offers made meanwhile reach the closed buffer and are written inline, behind it.
+            previous.close();
+        }
+        mWriteBehind = policy.isFlushOnOffer() ? null : new SQLiteQueueWriteBehind<>(this, policy);
+    }
+
+    /**
+     * Writes every element buffered by the {@link #setWriteBehindPolicy(SQLiteQueueWriteBehindPolicy)
+     * write-behind policy} to disk before returning. Does nothing without one.
+     *
+     * @throws RuntimeException if an element could not be stored.
+     */
+    public void flush() {
+        SQLiteQueueWriteBehind<E> writeBehind = mWriteBehind;
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    /**
+     * Sets where the queue reports its counters and per-phase latencies.
+     * {@link SQLiteQueueMetrics#NONE}, the default, costs nothing.
+     */
+    public void setMetrics(@NonNull SQLiteQueueMetrics metrics) {
+        mCodec.setMetrics(metrics);
+        metrics.onAttached(this);
+    }
+
+    /**
+     * Returns the size in bytes of the database file holding this queue, which is shared with any
+     * other queue in the same database.
+     */
+    public long getDatabaseSize() {
+        return mDbManager.getDatabaseSize();
+    }
+
+    /**
+     * Sets how many rows an {@link #iterator()} reads from the database at a time, which bounds the
+     * memory an iteration holds on to.
+     */
+    public void setIteratorPageSize(int iteratorPageSize) {
+        if (iteratorPageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1, was " + iteratorPageSize);
+        }
+        mIteratorPageSize = iteratorPageSize;
+    }
+
+    /**
+     * Keeps the next {@code readAheadSize} rows at the head of the queue in memory, read in a
+     * single query, for {@link #peek()}, {@link #element()} and {@link #poll()} to serve from.
+     * Elements are decoded at most once, so peeking before polling costs nothing extra, and
+     * polling only has to delete the row. 0, the default, turns read-ahead off.
+     * <p>
+     * The window is refreshed whenever this instance removes elements by other means, but not
+     * when other queue instances on the same table do, so leave it off when several instances
+     * consume the same table.
+     *
+     * @throws IllegalStateException if the queue is not FIFO ordered.
+     */
+    public synchronized void setReadAheadSize(int readAheadSize) {
+        if (readAheadSize < 0) {
+            throw new IllegalArgumentException("Read-ahead size must not be negative, was " + readAheadSize);
+        }
+        if (mDbManager.getOrderColumn() != null) {
+            throw new IllegalStateException("Read-ahead only works on FIFO queues");
+        }
+        mReadAhead = readAheadSize == 0 ? null : new SQLiteQueueReadAhead<>(mDbManager, mCodec, readAheadSize);
+    }
+
     @Override
     public int size() {
-        return mDbManager.getCount();
+        SQLiteQueueWriteBehind<E> writeBehind = mWriteBehind;
+        return mDbManager.getCount() + (writeBehind == null ? 0 : writeBehind.getPendingCount());
     }
 
     @Override
     public boolean isEmpty() {
-        return mDbManager.getCount() == 0;
+        return size() == 0;
     }
 
     @Override
     public boolean contains(Object o) {
+        flush();
         try {
             @SuppressWarnings("unchecked")
-            String converted = mConverter.serialize((E) o);
-            return isContains(converted);
+            E e = (E) o;
+            return mCodec.contains(mDbManager, e);
         } catch (Exception e) {
             return false;
         }
     }
 
-    private boolean isContains(String converted) {
-        return mDbManager.contains(converted);
-    }
-
     @NonNull
     @Override
     public Iterator<E> iterator() {
-        return new SQLiteQueueIterator<>(mDbManager, mConverter);
+        flush();
+        return new SQLiteQueueIterator<>(mDbManager, mCodec, this, mIteratorPageSize);
     }
 
     @NonNull
@@ -140,27 +330,37 @@ public class SQLitePersistentQueue<E> implements Queue<E>, Closeable {
 
     @Override
     public boolean add(E e) {
-        long rowId = mDbManager.insert(mConverter.serialize(e));
+        SQLiteQueueWriteBehind<E> writeBehind = mWriteBehind;
+        if (writeBehind != null) {
+            writeBehind.offer(e);
+            return true;
+        }
+        long rowId = insertElement(e);
         if (rowId == -1) {
             throw new RuntimeException("Failed to add element e = " + e.toString());
         }
-        mQueueEventBus.onAdded(e);
+        notifyAdded(e);
         return true;
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public boolean remove(Object o) {
-        if (contains(o)) {
-            E e = (E) o;
-            String converted = mConverter.serialize(e);
-            String deletedItem = mDbManager.remove(converted);
-            if (deletedItem != null) {
-                mQueueEventBus.onRemoved(e);
-                return true;
-            }
+        flush();
+        E e = (E) o;
+        boolean removed;
+        try {
+            // Delete straight away rather than checking contains() first, which would serialize
+            // the element a second time.
+            removed = mCodec.remove(mDbManager, e);
+        } catch (Exception ignored) {
+            return false;
+        }
+        if (removed) {
+            invalidateReadAhead();
+            notifyRemoved(e);
         }
-        return false;
+        return removed;
     }
 
     @Override
@@ -172,14 +372,35 @@ public class SQLitePersistentQueue<E> implements Queue<E>, Closeable {
         return true;
     }
 
+    /**
+     * Adds all the elements in one go, committing {@link #setInsertBatchSize(int) a batch} of rows
+     * per transaction, and publishes a single added event for them.
+     *
+     * @throws RuntimeException if an element could not be stored. Elements in batches committed
+     *                          before the failure stay in the queue.
+     */
     @Override
     public boolean addAll(@NonNull Collection<? extends E> c) {
-        for (E o : c) {
-            if (!add(o)) {
-                return false;
-            }
+        if (c == this) {
+            throw new IllegalArgumentException("Cannot add a queue to itself");
         }
-        return true;
+        flush();
+        List<E> elements = new ArrayList<>(c);
+        int inserted;
+        Throwable failure = null;
+        try {
+            inserted = insertElements(elements, mInsertBatchSize);
+        } catch (SQLiteQueueInsertException e) {
+            inserted = e.getInsertedCount();
+            failure = e.getCause();
+        }
+        if (inserted > 0) {
+            notifyAddedAll(elements.subList(0, inserted));
+        }
+        if (inserted < elements.size()) {
+            throw new RuntimeException("Failed to add element e = " + elements.get(inserted), failure);
+        }
+        return !elements.isEmpty();
     }
 
     @Override
@@ -201,9 +422,9 @@ public class SQLitePersistentQueue<E> implements Queue<E>, Closeable {
                 add((E) o);
             }
         }
-        for (E e : this) {
-            if (!c.contains(e)) {
-                remove(e);
+        for (Iterator<E> it = iterator(); it.hasNext(); ) {
+            if (!c.contains(it.next())) {
+                it.remove();
             }
         }
         return true;
@@ -211,15 +432,25 @@ public class SQLitePersistentQueue<E> implements Queue<E>, Closeable {
 
     @Override
     public void clear() {
+        SQLiteQueueWriteBehind<E> writeBehind = mWriteBehind;
+        if (writeBehind != null) {
+            writeBehind.discard();
+        }
         mDbManager.clear();
-        mQueueEventBus.onCleared();
+        invalidateReadAhead();
+        notifyCleared();
     }
 
     @Override
     public boolean offer(E e) {
-        long rowId = mDbManager.insert(mConverter.serialize(e));
+        SQLiteQueueWriteBehind<E> writeBehind = mWriteBehind;
+        if (writeBehind != null) {
+            writeBehind.offer(e);
+            return true;
+        }
+        long rowId = insertElement(e);
         if (rowId != -1) {
-            mQueueEventBus.onAdded(e);
+            notifyAdded(e);
             return true;
         } else {
             return false;
@@ -228,44 +459,368 @@ public class SQLitePersistentQueue<E> implements Queue<E>, Closeable {
 
     @Override
     public E remove() {
-        if (isEmpty()) {
+        E e = poll();
+        if (e == null) {
             throw new NoSuchElementException();
         }
-        String s = mDbManager.removeHead();
-        E e = mConverter.deserialize(s);
-        mQueueEventBus.onRemoved(e);
         return e;
     }
 
     @Override
     public E poll() {
-        if (isEmpty())
+        SQLiteQueuePayload<E> payload = pollPayload();
+        return payload == null ? null : payload.get();
+    }
+
+    /**
+     * Like {@link #poll()}, but returns the element in its stored form and only deserializes it
+     * when {@link SQLiteQueuePayload#get()} is called. Subscribers to the {@link #getEventBus()
+     * event bus} need the element, so it is deserialized right away if there are any.
+     *
+     * @return the head of the queue, or null if the queue is empty.
+     */
+    @Nullable
+    public SQLiteQueuePayload<E> pollPayload() {
+        flush();
+        SQLiteQueuePayload<E> payload;
+        SQLiteQueueReadAhead<E> readAhead = mReadAhead;
+        long start = mCodec.startTimer();
+        if (readAhead != null) {
+            payload = readAhead.poll();
+        } else {
+            List<SQLiteQueueEntry> head = removeHeadEntries(1);
+            payload = head.isEmpty() ? null : new SQLiteQueuePayload<>(mCodec, head.get(0));
+        }
+        mCodec.stopTimer(SQLiteQueueMetrics.PHASE_SQL, start);
+        if (payload == null)
             return null;
-        String s = mDbManager.removeHead();
-        E e = mConverter.deserialize(s);
-        mQueueEventBus.onRemoved(e);
-        return e;
+        mCodec.getMetrics().onDequeued(1);
+        if (mQueueEventBus.hasSubscribers()) {
+            notifyRemoved(payload.get());
+        } else {
+            onElementsRemoved();
+        }
+        return payload;
+    }
+
+
+    /**
+     * Retrieves and removes up to {@code maxElements} elements from the head of the queue in a
+     * single transaction.
+     *
+     * @return the removed elements in queue order, or an empty list if the queue is empty.
+     */
+    @NonNull
+    public List<E> pollBatch(int maxElements) {
+        flush();
+        long start = mCodec.startTimer();
+        List<SQLiteQueueEntry> entries = removeHeadEntries(maxElements);
+        mCodec.stopTimer(SQLiteQueueMetrics.PHASE_SQL, start);
+        // Only once the rows are gone, or a peek meanwhile could refill the window with them.
+        invalidateReadAhead();
+        mCodec.getMetrics().onDequeued(entries.size());
+        List<E> elements = new ArrayList<>(entries.size());
+        for (SQLiteQueueEntry entry : entries) {
+            elements.add(mCodec.decode(entry));
+        }
+        if (!elements.isEmpty()) {
+            notifyRemovedAll(elements);
+        }
+        return elements;
+    }
+
+    /**
+     * Leases up to {@code maxElements} elements from the head of the queue. Leased elements leave
+     * the queue but stay on disk until they are {@link #ack(SQLiteQueueLease) acked}; if that does
+     * not happen before the lease runs out, or the process dies, they are handed out again. This
+     * gives at-least-once delivery for the price of a single transaction per batch.
+     * <p>
+     * Elements whose lease ran out are reclaimed at the start of every call.
+     *
+     * @return the leases in queue order, or an empty list if the queue is empty.
+     */
+    @NonNull
+    public List<SQLiteQueueLease<E>> reserve(int maxElements, long leaseDuration, @NonNull TimeUnit unit) {
+        long expiresAt = System.currentTimeMillis() + unit.toMillis(leaseDuration);
+        long token = LEASE_TOKENS.nextLong();
+        flush();
+        long start = mCodec.startTimer();
+        List<SQLiteQueueEntry> entries = leaseHeadEntries(maxElements, expiresAt, token);
+        mCodec.stopTimer(SQLiteQueueMetrics.PHASE_SQL, start);
+        invalidateReadAhead();
+        mCodec.getMetrics().onDequeued(entries.size());
+        List<SQLiteQueueLease<E>> leases = new ArrayList<>(entries.size());
+        for (SQLiteQueueEntry entry : entries) {
+            leases.add(new SQLiteQueueLease<>(mCodec.decode(entry), entry.getId(), token, expiresAt));
+        }
+        if (leases.isEmpty())
+            return leases;
+        if (mQueueEventBus.hasSubscribers()) {
+            List<E> elements = new ArrayList<>(leases.size());
+            for (SQLiteQueueLease<E> lease : leases) {
+                elements.add(lease.getElement());
+            }
+            notifyRemovedAll(elements);
+        } else {
+            onElementsRemoved();
+        }
+        return leases;
+    }
+
+    /**
+     * Settles a leased element, removing it from disk for good.
+     *
+     * @return false if the lease had already run out and the element may have been handed out
+     * again, or if it was already settled.
+     */
+    public boolean ack(@NonNull SQLiteQueueLease<E> lease) {
+        long start = mCodec.startTimer();
+        boolean acked = mDbManager.ack(lease.getId(), lease.getToken());
+        mCodec.stopTimer(SQLiteQueueMetrics.PHASE_SQL, start);
+        return acked;
+    }
+
+    /**
+     * Returns a consumer that claims {@code claimSize} elements at a time for its own use. Give
+     * each worker thread its own consumer to have them work through the queue in parallel.
+     *
+     * @see SQLiteQueueConsumer
+     */
+    @NonNull
+    public SQLiteQueueConsumer<E> newConsumer(int claimSize, long leaseDuration, @NonNull TimeUnit unit) {
+        return new SQLiteQueueConsumer<>(this, claimSize, unit.toMillis(leaseDuration));
+    }
+
+    /**
+     * Returns a Reactive Streams publisher that emits the elements of this queue as its subscribers
+     * request them. Elements are leased {@code batchSize} at a time, never more than requested,
+     * and settled once they have been emitted, so a slow subscriber throttles how much is read
+     * rather than having elements pile up in memory. Subscribers are signalled on the executor.
+     *
+     * @see SQLiteQueuePublisher
+     */
+    @NonNull
+    public Publisher<E> asPublisher(@NonNull Executor executor, int batchSize, long leaseDuration,
+                                    @NonNull TimeUnit unit) {
+        return new SQLiteQueuePublisher<>(this, executor, batchSize, unit.toMillis(leaseDuration));
+    }
+
+    /**
+     * Gives a leased element back to the queue, in the place it was leased from.
+     *
+     * @return false if the lease had already run out and the element may have been handed out
+     * again, or if it was already settled.
+     */
+    public boolean nack(@NonNull SQLiteQueueLease<E> lease) {
+        if (!mDbManager.nack(lease.getId(), lease.getToken()))
+            return false;
+        invalidateReadAhead();
+        notifyAdded(lease.getElement());
+        return true;
+    }
+
+    /**
+     * Gives every leased element whose lease ran out back to the queue.
+     *
+     * @return the number of elements given back.
+     */
+    public int reclaimExpiredLeases() {
+        int reclaimed = mDbManager.reclaimExpiredLeases(System.currentTimeMillis());
+        if (reclaimed > 0) {
+            invalidateReadAhead();
+            onElementsAdded();
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Removes all the elements of this queue and adds them to the given collection.
+     *
+     * @see java.util.concurrent.BlockingQueue#drainTo(Collection)
+     */
+    public int drainTo(@NonNull Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most {@code maxElements} elements from the head of this queue and adds them to the
+     * given collection, in queue order.
+     *
+     * @return the number of elements transferred.
+     * @see java.util.concurrent.BlockingQueue#drainTo(Collection, int)
+     */
+    public int drainTo(@NonNull Collection<? super E> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException("Cannot drain a queue into itself");
+        }
+        List<E> drained = pollBatch(maxElements);
+        c.addAll(drained);
+        return drained.size();
     }
 
     @Override
     public E element() {
+        flush();
         if (isEmpty()) {
             throw new RuntimeException("Queue is empty");
         }
-        String s = mDbManager.getHead();
-        return mConverter.deserialize(s);
+        return peek();
     }
 
     @Override
     public E peek() {
-        String s = mDbManager.getHead();
-        if (s == null)
+        flush();
+        SQLiteQueueReadAhead<E> readAhead = mReadAhead;
+        if (readAhead != null) {
+            return readAhead.peek();
+        }
+        long start = mCodec.startTimer();
+        SQLiteQueueEntry head = mDbManager.getHeadEntry();
+        mCodec.stopTimer(SQLiteQueueMetrics.PHASE_SQL, start);
+        if (head == null)
             return null;
-        return mConverter.deserialize(s);
+        return mCodec.decode(head);
+    }
+
+    /**
+     * Stores a single element, returning its row id or -1 on failure.
+     */
+    long insertElement(E e) {
+        return mCodec.insert(mDbManager, e);
+    }
+
+    /**
+     * Stores the elements in order, committing {@code batchSize} rows per transaction, and returns
+     * how many were stored.
+     */
+    int insertElements(List<E> elements, int batchSize) {
+        return mCodec.insertAll(mDbManager, elements, orderKeys(elements), batchSize);
+    }
+
+    /**
+     * Like {@link #insertElements(List, int)}, for elements whose values were already encoded by
+     * the codec.
+     */
+    int insertEncoded(List<E> elements, List<Object> values, int batchSize) {
+        return mCodec.insertAllEncoded(mDbManager, values, orderKeys(elements), batchSize);
+    }
+
+    /**
+     * Returns the order keys to store the elements with, or null for a FIFO table.
+     */
+    long[] orderKeys(List<E> elements) {
+        return null;
+    }
+
+    /**
+     * Removes and returns up to {@code maxElements} rows that are ready to leave the queue, in
+     * queue order.
+     */
+    List<SQLiteQueueEntry> removeHeadEntries(int maxElements) {
+        return mDbManager.removeHeadEntries(maxElements);
+    }
+
+    /**
+     * Leases up to {@code maxElements} rows that are ready to leave the queue, in queue order.
+     */
+    List<SQLiteQueueEntry> leaseHeadEntries(int maxElements, long leaseExpiresAt, long leaseToken) {
+        return mDbManager.leaseHeadEntries(maxElements, leaseExpiresAt, leaseToken);
+    }
+
+    /**
+     * Settles every element leased under the given token.
+     */
+    int ackAll(long leaseToken) {
+        return mDbManager.ackAll(leaseToken);
+    }
+
+    /**
+     * Drops the read-ahead window after rows were removed from or put back at the head of the
+     * queue other than through it.
+     */
+    void invalidateReadAhead() {
+        SQLiteQueueReadAhead<E> readAhead = mReadAhead;
+        if (readAhead != null) {
+            readAhead.invalidate();
+        }
+    }
+
+    void notifyAdded(E e) {
+        long start = mCodec.startTimer();
+        mQueueEventBus.onAdded(e);
+        onElementsAdded();
+        mCodec.stopTimer(SQLiteQueueMetrics.PHASE_PUBLISH, start);
+    }
+
+    void notifyAddedAll(List<E> elements) {
+        long start = mCodec.startTimer();
+        if (mQueueEventBus.hasSubscribers()) {
+            mQueueEventBus.onAddedAll(Collections.unmodifiableList(elements));
+        }
+        onElementsAdded();
+        mCodec.stopTimer(SQLiteQueueMetrics.PHASE_PUBLISH, start);
+    }
+
+    void notifyRemoved(E e) {
+        long start = mCodec.startTimer();
+        mQueueEventBus.onRemoved(e);
+        onElementsRemoved();
+        mCodec.stopTimer(SQLiteQueueMetrics.PHASE_PUBLISH, start);
+    }
+
+    void notifyRemovedAll(List<E> elements) {
+        long start = mCodec.startTimer();
+        if (mQueueEventBus.hasSubscribers()) {
+            mQueueEventBus.onRemovedAll(Collections.unmodifiableList(elements));
+        }
+        onElementsRemoved();
+        mCodec.stopTimer(SQLiteQueueMetrics.PHASE_PUBLISH, start);
+    }
+
+    void notifyCleared() {
+        mQueueEventBus.onCleared();
+        onElementsRemoved();
+    }
+
+    /**
+     * Called after elements were stored in the queue, once their added event is published. Wakes
+     * up the listeners registered with {@link #addElementsAddedListener(Runnable)}; overrides
+     * must call through.
+     */
+    void onElementsAdded() {
+        for (Runnable listener : mElementsAddedListeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Registers an internal listener run whenever elements are added, without subscribing to the
+     * event bus, which would make every poll decode and publish its elements.
+     */
+    void addElementsAddedListener(Runnable listener) {
+        mElementsAddedListeners.add(listener);
+    }
+
+    void removeElementsAddedListener(Runnable listener) {
+        mElementsAddedListeners.remove(listener);
+    }
+
+    /**
+     * Called after elements were removed from the queue, once their removed or cleared event is
+     * published.
+     */
+    void onElementsRemoved() {
     }
 
     @Override
     public void close() throws IOException {
+        SQLiteQueueWriteBehind<E> writeBehind = mWriteBehind;
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
         mDbManager.close();
     }
 }
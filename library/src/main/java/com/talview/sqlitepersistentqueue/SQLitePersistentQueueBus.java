@@ -1,24 +1,75 @@
 package com.talview.sqlitepersistentqueue;
 
+import android.support.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
 /**
  * The bus that takes care of subscriptions publishing for sqlite persistent queue.
+ * <p>
+ * By default subscribers are called on the thread that changed the queue, before the queue
+ * operation returns. {@link #setExecutor(Executor)} moves them off that thread.
  */
 public class SQLitePersistentQueueBus<T> {
     private final SQLiteBusPublisher<T> publisher = new SQLiteBusPublisher<>();
+    private volatile SQLiteBusDispatcher<T> dispatcher;
 
     SQLitePersistentQueueBus() {
     }
 
+    /**
+     * Delivers events on the given executor so queue operations no longer wait for subscribers.
+     * Subscribers are still called one at a time and in order. Consecutive additions or removals
+     * that pile up while a subscriber is busy are coalesced: batch subscribers get them in a
+     * single {@link SQLiteBatchBusSubscriber#onAddedAll(List) onAddedAll} or
+     * {@link SQLiteBatchBusSubscriber#onRemovedAll(List) onRemovedAll}, the others one call per
+     * object as before.
+     *
+     * @param executor null to call subscribers on the queue's thread again.
+     */
+    public void setExecutor(@Nullable Executor executor) {
+        dispatcher = executor == null ? null : new SQLiteBusDispatcher<>(publisher, executor);
+    }
+
     void onAdded(T object) {
-        publisher.publish(SQLiteBusPublisher.EVENT_ADDED, object);
+        publish(SQLiteBusPublisher.EVENT_ADDED, object);
+    }
+
+    void onAddedAll(List<T> objects) {
+        publishAll(SQLiteBusPublisher.EVENT_ADDED, objects);
     }
 
     void onRemoved(T object) {
-        publisher.publish(SQLiteBusPublisher.EVENT_REMOVED, object);
+        publish(SQLiteBusPublisher.EVENT_REMOVED, object);
+    }
+
+    void onRemovedAll(List<T> objects) {
+        publishAll(SQLiteBusPublisher.EVENT_REMOVED, objects);
     }
 
     void onCleared() {
-        publisher.publish(SQLiteBusPublisher.EVENT_CLEARED, null);
+        publish(SQLiteBusPublisher.EVENT_CLEARED, null);
+    }
+
+    private void publish(int event, T object) {
+        if (!publisher.hasSubscribers())
+            return;
+        SQLiteBusDispatcher<T> dispatcher = this.dispatcher;
+        if (dispatcher != null)
+            dispatcher.dispatch(event, object);
+        else
+            publisher.publish(event, object);
+    }
+
+    private void publishAll(int event, List<T> objects) {
+        if (!publisher.hasSubscribers())
+            return;
+        SQLiteBusDispatcher<T> dispatcher = this.dispatcher;
+        if (dispatcher != null)
+            dispatcher.dispatchAll(event, objects);
+        else
+            publisher.publishAll(event, objects);
     }
 
     public void subscribe(SQLiteBusSubscriber<T> subscriber) {
@@ -0,0 +1,275 @@
+package com.talview.sqlitepersistentqueue;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueEntry;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueInsertException;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves elements in and out of a queue table, through a {@link QueueObjectConverter} for text
+ * tables or a {@link QueueObjectBinaryConverter} for blob tables. Converter calls and statements
+ * are timed, and inserts counted, into the {@link SQLiteQueueMetrics} set on it.
+ */
+abstract class SQLiteQueueCodec<E> {
+    private volatile SQLiteQueueMetrics mMetrics = SQLiteQueueMetrics.NONE;
+
+    abstract long insert(SQLiteQueueTableManager manager, E e);
+
+    abstract long insert(SQLiteQueueTableManager manager, E e, long orderKey);
+
+    abstract int insertAll(SQLiteQueueTableManager manager, List<E> elements, int batchSize);
+
+    abstract int insertAll(SQLiteQueueTableManager manager, List<E> elements, long[] orderKeys, int batchSize);
+
+    /**
+     * Serializes the element into the value {@link #insertAllEncoded} stores, so that it can be
+     * converted on one thread and written on another.
+     */
+    abstract Object encode(E e);
+
+    /**
+     * Stores values returned by {@link #encode(Object)}, like
+     * {@link #insertAll(SQLiteQueueTableManager, List, long[], int)}.
+     */
+    abstract int insertAllEncoded(SQLiteQueueTableManager manager, List<Object> values, long[] orderKeys, int batchSize);
+
+    abstract boolean contains(SQLiteQueueTableManager manager, E e);
+
+    abstract boolean remove(SQLiteQueueTableManager manager, E e);
+
+    abstract E decode(SQLiteQueueEntry entry);
+
+    SQLiteQueueMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    void setMetrics(SQLiteQueueMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Returns the start of a timed section, or 0 without metrics so that the default does not
+     * even read the clock.
+     */
+    long startTimer() {
+        return mMetrics == SQLiteQueueMetrics.NONE ? 0 : System.nanoTime();
+    }
+
+    void stopTimer(int phase, long start) {
+        if (start != 0)
+            mMetrics.onLatency(phase, System.nanoTime() - start);
+    }
+
+    static <E> SQLiteQueueCodec<E> text(final QueueObjectConverter<E> converter) {
+        return new Store<E, String>() {
+            @Override
+            String serialize(E e) {
+                return converter.serialize(e);
+            }
+
+            @Override
+            E deserialize(SQLiteQueueEntry entry) {
+                return converter.deserialize(entry.getValue());
+            }
+
+            @Override
+            long store(SQLiteQueueTableManager manager, String value) {
+                return manager.insert(value);
+            }
+
+            @Override
+            long store(SQLiteQueueTableManager manager, String value, long orderKey) {
+                return manager.insert(value, orderKey);
+            }
+
+            @Override
+            int storeAll(SQLiteQueueTableManager manager, List<String> values, long[] orderKeys, int batchSize) {
+                return orderKeys == null
+                        ? manager.insertAll(values, batchSize)
+                        : manager.insertAll(values, orderKeys, batchSize);
+            }
+
+            @Override
+            boolean find(SQLiteQueueTableManager manager, String value) {
+                return manager.contains(value);
+            }
+
+            @Override
+            boolean delete(SQLiteQueueTableManager manager, String value) {
+                return manager.remove(value) != null;
+            }
+        };
+    }
+
+    static <E> SQLiteQueueCodec<E> binary(final QueueObjectBinaryConverter<E> converter) {
+        return new Store<E, byte[]>() {
+            @Override
+            byte[] serialize(E e) {
+                return converter.serialize(e);
+            }
+
+            @Override
+            E deserialize(SQLiteQueueEntry entry) {
+                byte[] bytes = entry.getBytes();
+                if (bytes == null)
+                    return null;
+                return converter.deserialize(bytes, 0, bytes.length);
+            }
+
+            @Override
+            long store(SQLiteQueueTableManager manager, byte[] value) {
+                return manager.insertBytes(value);
+            }
+
+            @Override
+            long store(SQLiteQueueTableManager manager, byte[] value, long orderKey) {
+                return manager.insertBytes(value, orderKey);
+            }
+
+            @Override
+            int storeAll(SQLiteQueueTableManager manager, List<byte[]> values, long[] orderKeys, int batchSize) {
+                return orderKeys == null
+                        ? manager.insertAllBytes(values, batchSize)
+                        : manager.insertAllBytes(values, orderKeys, batchSize);
+            }
+
+            @Override
+            boolean find(SQLiteQueueTableManager manager, byte[] value) {
+                return manager.containsBytes(value);
+            }
+
+            @Override
+            boolean delete(SQLiteQueueTableManager manager, byte[] value) {
+                return manager.removeBytes(value);
+            }
+        };
+    }
+
+    /**
+     * A codec storing elements as values of type {@code V}, split into the converter calls and
+     * the table calls so that each can be timed on its own.
+     */
+    private abstract static class Store<E, V> extends SQLiteQueueCodec<E> {
+
+        abstract V serialize(E e);
+
+        abstract E deserialize(SQLiteQueueEntry entry);
+
+        abstract long store(SQLiteQueueTableManager manager, V value);
+
+        abstract long store(SQLiteQueueTableManager manager, V value, long orderKey);
+
+        /**
+         * @param orderKeys the order keys, or null for a FIFO table.
+         */
+        abstract int storeAll(SQLiteQueueTableManager manager, List<V> values, long[] orderKeys, int batchSize);
+
+        abstract boolean find(SQLiteQueueTableManager manager, V value);
+
+        abstract boolean delete(SQLiteQueueTableManager manager, V value);
+
+        @Override
+        final long insert(SQLiteQueueTableManager manager, E e) {
+            V value = timedSerialize(e);
+            long start = startTimer();
+            long rowId = store(manager, value);
+            stopTimer(SQLiteQueueMetrics.PHASE_SQL, start);
+            return counted(rowId);
+        }
+
+        @Override
+        final long insert(SQLiteQueueTableManager manager, E e, long orderKey) {
+            V value = timedSerialize(e);
+            long start = startTimer();
+            long rowId = store(manager, value, orderKey);
+            stopTimer(SQLiteQueueMetrics.PHASE_SQL, start);
+            return counted(rowId);
+        }
+
+        @Override
+        final int insertAll(SQLiteQueueTableManager manager, List<E> elements, int batchSize) {
+            return insertAll(manager, elements, null, batchSize);
+        }
+
+        @Override
+        final int insertAll(SQLiteQueueTableManager manager, List<E> elements, long[] orderKeys, int batchSize) {
+            long start = startTimer();
+            List<V> values = new ArrayList<>(elements.size());
+            for (E e : elements) {
+                values.add(serialize(e));
+            }
+            stopTimer(SQLiteQueueMetrics.PHASE_SERIALIZE, start);
+            return countedStoreAll(manager, values, orderKeys, batchSize);
+        }
+
+        @Override
+        final Object encode(E e) {
+            return timedSerialize(e);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        final int insertAllEncoded(SQLiteQueueTableManager manager, List<Object> values, long[] orderKeys, int batchSize) {
+            return countedStoreAll(manager, (List<V>) (List<?>) values, orderKeys, batchSize);
+        }
+
+        @Override
+        final boolean contains(SQLiteQueueTableManager manager, E e) {
+            V value = timedSerialize(e);
+            long start = startTimer();
+            boolean found = find(manager, value);
+            stopTimer(SQLiteQueueMetrics.PHASE_SQL, start);
+            return found;
+        }
+
+        @Override
+        final boolean remove(SQLiteQueueTableManager manager, E e) {
+            V value = timedSerialize(e);
+            long start = startTimer();
+            boolean deleted = delete(manager, value);
+            stopTimer(SQLiteQueueMetrics.PHASE_SQL, start);
+            return deleted;
+        }
+
+        @Override
+        final E decode(SQLiteQueueEntry entry) {
+            long start = startTimer();
+            E e = deserialize(entry);
+            stopTimer(SQLiteQueueMetrics.PHASE_DESERIALIZE, start);
+            return e;
+        }
+
+        private V timedSerialize(E e) {
+            long start = startTimer();
+            V value = serialize(e);
+            stopTimer(SQLiteQueueMetrics.PHASE_SERIALIZE, start);
+            return value;
+        }
+
+        private int countedStoreAll(SQLiteQueueTableManager manager, List<V> values, long[] orderKeys, int batchSize) {
+            long start = startTimer();
+            int inserted;
+            try {
+                inserted = storeAll(manager, values, orderKeys, batchSize);
+            } catch (SQLiteQueueInsertException ex) {
+                stopTimer(SQLiteQueueMetrics.PHASE_SQL, start);
+                getMetrics().onEnqueued(ex.getInsertedCount());
+                getMetrics().onInsertFailed(1);
+                throw ex;
+            }
+            stopTimer(SQLiteQueueMetrics.PHASE_SQL, start);
+            getMetrics().onEnqueued(inserted);
+            return inserted;
+        }
+
+        private long counted(long rowId) {
+            if (rowId == -1)
+                getMetrics().onInsertFailed(1);
+            else
+                getMetrics().onEnqueued(1);
+            return rowId;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.talview.sqlitepersistentqueue;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single worker's view of a queue, see {@link SQLitePersistentQueue#newConsumer(int, long, TimeUnit)}.
+ * <p>
+ * A consumer claims a batch of rows at a time: one transaction moves them to the in-flight table
+ * under a claim id of its own, and {@link #poll()} then hands them out from memory. Claims never
+ * overlap, so any number of consumers can work through the same queue without handing out a row
+ * twice, and each of them only takes the database write lock once per batch, which lets workers
+ * spend their time processing elements rather than waiting on each other at the head of the queue.
+ * <p>
+ * Elements are processed at least once. A claimed batch is settled when the consumer comes back
+ * for the next one, or when it is closed. If the worker dies before that, the whole batch is
+ * handed out again once its lease runs out, so pick a lease long enough to process a full batch.
+ * <p>
+ * A consumer is meant to be used by one thread.
+ */
+public class SQLiteQueueConsumer<E> implements Closeable {
+    private final SQLitePersistentQueue<E> mQueue;
+    private final int mClaimSize;
+    private final long mLeaseMillis;
+    private List<SQLiteQueueLease<E>> mClaim;
+    private int mPosition;
+
+    SQLiteQueueConsumer(SQLitePersistentQueue<E> queue, int claimSize, long leaseMillis) {
+        if (claimSize < 1) {
+            throw new IllegalArgumentException("Claim size must be at least 1, was " + claimSize);
+        }
+        mQueue = queue;
+        mClaimSize = claimSize;
+        mLeaseMillis = leaseMillis;
+    }
+
+    /**
+     * Returns the next element of this consumer's claim, settling the current claim and claiming
+     * a new batch once it is used up.
+     *
+     * @return the next element, or null if the queue is empty.
+     */
+    public E poll() {
+        if (mClaim == null || mPosition == mClaim.size()) {
+            settle();
+            mClaim = mQueue.reserve(mClaimSize, mLeaseMillis, TimeUnit.MILLISECONDS);
+            mPosition = 0;
+            if (mClaim.isEmpty()) {
+                mClaim = null;
+                return null;
+            }
+        }
+        return mClaim.get(mPosition++).getElement();
+    }
+
+    /**
+     * Settles the elements handed out so far and gives the rest of the claim back to the queue.
+     */
+    @Override
+    public void close() {
+        if (mClaim == null)
+            return;
+        for (int i = mPosition; i < mClaim.size(); i++) {
+            mQueue.nack(mClaim.get(i));
+        }
+        settle();
+    }
+
+    private void settle() {
+        if (mClaim != null && !mClaim.isEmpty()) {
+            mQueue.ackAll(mClaim.get(0).getToken());
+        }
+        mClaim = null;
+    }
+}
@@ -1,35 +1,95 @@
 package com.talview.sqlitepersistentqueue;
 
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueEntry;
 import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * An iterator to iterate through the sqlite queue Db records.
+ * <p>
+ * Rows are read a page at a time, each page picking up after the id of the last row of the
+ * previous one, so a full iteration is a single pass over the table with at most one page held in
+ * memory.
  */
 class SQLiteQueueIterator<T> implements Iterator<T> {
-    private SQLiteQueueTableManager mDbManager;
-    private long mCurrentId;
-    private QueueObjectConverter<T> mConverter;
+    static final int DEFAULT_PAGE_SIZE = 100;
+    private final SQLiteQueueTableManager mDbManager;
+    private final SQLiteQueueCodec<T> mCodec;
+    private final SQLitePersistentQueue<T> mQueue;
+    private final int mPageSize;
+    private List<SQLiteQueueEntry> mPage = Collections.emptyList();
+    private int mPagePosition;
+    private boolean mLastPage;
+    private long mLastFetchedId = -1;
+    private SQLiteQueueEntry mCurrent;
+    private T mCurrentElement;
 
     SQLiteQueueIterator(SQLiteQueueTableManager manager,
                         QueueObjectConverter<T> converter) {
+        this(manager, SQLiteQueueCodec.text(converter), null, DEFAULT_PAGE_SIZE);
+    }
+
+    SQLiteQueueIterator(SQLiteQueueTableManager manager,
+                        SQLiteQueueCodec<T> codec,
+                        SQLitePersistentQueue<T> queue,
+                        int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1, was " + pageSize);
+        }
         mDbManager = manager;
-        mCurrentId = -1;
-        mConverter = converter;
+        mCodec = codec;
+        mQueue = queue;
+        mPageSize = pageSize;
     }
 
     @Override
     public boolean hasNext() {
-        return mDbManager.getCount() > 0 && mCurrentId < mDbManager.getMaxId();
+        if (mPagePosition < mPage.size())
+            return true;
+        if (mLastPage)
+            return false;
+        fetchNextPage();
+        return mPagePosition < mPage.size();
     }
 
+    /**
+     * Returns the next element, or null once the iteration is exhausted.
+     */
     @Override
     public T next() {
-        mCurrentId = mDbManager.getNextId(mCurrentId);
-        String next = mDbManager.get(mCurrentId);
-        if (next == null)
+        if (!hasNext())
             return null;
-        return mConverter.deserialize(next);
+        mCurrent = mPage.get(mPagePosition++);
+        mCurrentElement = mCodec.decode(mCurrent);
+        return mCurrentElement;
+    }
+
+    /**
+     * Removes the row of the element last returned by {@link #next()} from the queue.
+     */
+    @Override
+    public void remove() {
+        if (mCurrent == null) {
+            throw new IllegalStateException("next() has not been called or remove() already was");
+        }
+        boolean removed = mDbManager.remove(mCurrent.getId());
+        if (removed && mQueue != null) {
+            mQueue.invalidateReadAhead();
+            mQueue.notifyRemoved(mCurrentElement);
+        }
+        mCurrent = null;
+        mCurrentElement = null;
+    }
+
+    private void fetchNextPage() {
+        mPage = mDbManager.getEntries(mLastFetchedId, mPageSize);
+        mPagePosition = 0;
+        if (!mPage.isEmpty()) {
+            mLastFetchedId = mPage.get(mPage.size() - 1).getId();
+        }
+        mLastPage = mPage.size() < mPageSize;
     }
 }
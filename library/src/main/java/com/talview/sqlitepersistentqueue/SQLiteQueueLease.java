@@ -0,0 +1,40 @@
+package com.talview.sqlitepersistentqueue;
+
+/**
+ * An element leased from a queue by {@link SQLitePersistentQueue#reserve(int, long, java.util.concurrent.TimeUnit)}.
+ * Pass it back to {@link SQLitePersistentQueue#ack(SQLiteQueueLease)} once the element is processed,
+ * or to {@link SQLitePersistentQueue#nack(SQLiteQueueLease)} to give it back to the queue.
+ */
+public final class SQLiteQueueLease<E> {
+    private final E mElement;
+    private final long mId;
+    private final long mToken;
+    private final long mExpiresAt;
+
+    SQLiteQueueLease(E element, long id, long token, long expiresAt) {
+        mElement = element;
+        mId = id;
+        mToken = token;
+        mExpiresAt = expiresAt;
+    }
+
+    public E getElement() {
+        return mElement;
+    }
+
+    /**
+     * Returns the wall clock time in milliseconds after which the element may be handed out
+     * again.
+     */
+    public long getExpiresAt() {
+        return mExpiresAt;
+    }
+
+    long getId() {
+        return mId;
+    }
+
+    long getToken() {
+        return mToken;
+    }
+}
@@ -0,0 +1,79 @@
+package com.talview.sqlitepersistentqueue;
+
+/**
+ * Receives counters and latencies from a queue, set with
+ * {@link SQLitePersistentQueue#setMetrics(SQLiteQueueMetrics)}. Callbacks come from whichever
+ * thread runs the operation, so implementations must be thread-safe and cheap.
+ * <p>
+ * {@link #NONE}, the default, ignores everything; with it the queue does not even read the clock.
+ * {@link SQLiteQueueMetricsRecorder} keeps counters and latency histograms in memory.
+ */
+public interface SQLiteQueueMetrics {
+    /**
+     * Time spent in the converter turning elements into stored values.
+     */
+    int PHASE_SERIALIZE = 0;
+    /**
+     * Time spent running statements against the database.
+     */
+    int PHASE_SQL = 1;
+    /**
+     * Time spent in the converter turning stored values back into elements.
+     */
+    int PHASE_DESERIALIZE = 2;
+    /**
+     * Time spent publishing added and removed events, subscribers included.
+     */
+    int PHASE_PUBLISH = 3;
+    int PHASE_COUNT = 4;
+
+    SQLiteQueueMetrics NONE = new SQLiteQueueMetrics() {
+        @Override
+        public void onAttached(SQLitePersistentQueue<?> queue) {
+        }
+
+        @Override
+        public void onEnqueued(int count) {
+        }
+
+        @Override
+        public void onDequeued(int count) {
+        }
+
+        @Override
+        public void onInsertFailed(int count) {
+        }
+
+        @Override
+        public void onLatency(int phase, long nanos) {
+        }
+    };
+
+    /**
+     * Called when set on a queue, whose {@link SQLitePersistentQueue#size() depth} and
+     * {@link SQLitePersistentQueue#getDatabaseSize() database size} can be read as gauges.
+     */
+    void onAttached(SQLitePersistentQueue<?> queue);
+
+    /**
+     * Called after {@code count} elements were stored.
+     */
+    void onEnqueued(int count);
+
+    /**
+     * Called after {@code count} elements were taken from the head of the queue, by polling,
+     * draining or leasing them.
+     */
+    void onDequeued(int count);
+
+    /**
+     * Called when storing elements failed.
+     */
+    void onInsertFailed(int count);
+
+    /**
+     * Called with the time one operation spent in the given phase, one of the {@code PHASE_}
+     * constants.
+     */
+    void onLatency(int phase, long nanos);
+}
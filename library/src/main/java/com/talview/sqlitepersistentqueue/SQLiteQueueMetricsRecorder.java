@@ -0,0 +1,85 @@
+package com.talview.sqlitepersistentqueue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics kept in memory: running counters, a {@link SQLiteQueueLatencyHistogram} per phase, and
+ * the depth and database size of the queue it is set on, read when asked for. Use one recorder per
+ * queue.
+ */
+public class SQLiteQueueMetricsRecorder implements SQLiteQueueMetrics {
+    private final AtomicLong mEnqueued = new AtomicLong();
+    private final AtomicLong mDequeued = new AtomicLong();
+    private final AtomicLong mFailedInserts = new AtomicLong();
+    private final SQLiteQueueLatencyHistogram[] mLatencies = new SQLiteQueueLatencyHistogram[PHASE_COUNT];
+    private volatile SQLitePersistentQueue<?> mQueue;
+
+    public SQLiteQueueMetricsRecorder() {
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mLatencies[i] = new SQLiteQueueLatencyHistogram();
+        }
+    }
+
+    @Override
+    public void onAttached(SQLitePersistentQueue<?> queue) {
+        mQueue = queue;
+    }
+
+    @Override
+    public void onEnqueued(int count) {
+        mEnqueued.addAndGet(count);
+    }
+
+    @Override
+    public void onDequeued(int count) {
+        mDequeued.addAndGet(count);
+    }
+
+    @Override
+    public void onInsertFailed(int count) {
+        mFailedInserts.addAndGet(count);
+    }
+
+    @Override
+    public void onLatency(int phase, long nanos) {
+        mLatencies[phase].record(nanos);
+    }
+
+    public long getEnqueuedCount() {
+        return mEnqueued.get();
+    }
+
+    public long getDequeuedCount() {
+        return mDequeued.get();
+    }
+
+    public long getFailedInsertCount() {
+        return mFailedInserts.get();
+    }
+
+    /**
+     * Returns the number of elements in the queue, or 0 before the recorder is set on one.
+     */
+    public int getDepth() {
+        SQLitePersistentQueue<?> queue = mQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Returns the size in bytes of the queue's database, or 0 before the recorder is set on one.
+     */
+    public long getDatabaseSize() {
+        SQLitePersistentQueue<?> queue = mQueue;
+        return queue == null ? 0 : queue.getDatabaseSize();
+    }
+
+    /**
+     * Returns the latencies of the given phase, one of the {@code PHASE_} constants.
+     */
+    public SQLiteQueueLatencyHistogram getLatency(int phase) {
+        if (phase < 0 || phase >= PHASE_COUNT) {
+            throw new IllegalArgumentException("Unknown phase " + phase);
+        }
+        return mLatencies[phase];
+    }
+}
@@ -0,0 +1,51 @@
+package com.talview.sqlitepersistentqueue;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueEntry;
+
+/**
+ * An element removed by {@link SQLitePersistentQueue#pollPayload()}, still in its stored form.
+ * The converter only runs the first time {@link #get()} is called, so callers that forward the
+ * raw value, or drop it, never pay for deserializing it.
+ * <p>
+ * Not thread-safe; hand the element over rather than the payload.
+ */
+public final class SQLiteQueuePayload<E> {
+    private final SQLiteQueueCodec<E> mCodec;
+    private final SQLiteQueueEntry mEntry;
+    private E mElement;
+    private boolean mDecoded;
+
+    SQLiteQueuePayload(SQLiteQueueCodec<E> codec, SQLiteQueueEntry entry) {
+        mCodec = codec;
+        mEntry = entry;
+    }
+
+    /**
+     * Returns the element, deserializing it on the first call.
+     */
+    public E get() {
+        if (!mDecoded) {
+            mElement = mCodec.decode(mEntry);
+            mDecoded = true;
+        }
+        return mElement;
+    }
+
+    /**
+     * Returns the stored string, or null for queues that store bytes.
+     */
+    public String getValue() {
+        return mEntry.getValue();
+    }
+
+    /**
+     * Returns the stored bytes, or null for queues that store strings.
+     */
+    public byte[] getBytes() {
+        return mEntry.getBytes();
+    }
+
+    long getId() {
+        return mEntry.getId();
+    }
+}
@@ -0,0 +1,187 @@
+package com.talview.sqlitepersistentqueue;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A Reactive Streams view of a queue, see
+ * {@link SQLitePersistentQueue#asPublisher(Executor, int, long, TimeUnit)}.
+ * <p>
+ * Every subscription leases elements from the queue the way a {@link SQLiteQueueConsumer} does,
+ * but never more than its subscriber has requested, so a slow subscriber leaves the elements it
+ * is not ready for on disk. A leased batch is settled once all of it has been passed to
+ * {@code onNext}; if the process dies before that, the batch is handed out again when its lease
+ * runs out. When the queue runs dry the subscription waits for the next element to be added
+ * through the queue instance.
+ * <p>
+ * Subscribers are signalled on the executor, one signal at a time. Several subscribers compete
+ * for the elements of the queue rather than each seeing all of them. The stream never completes.
+ */
+class SQLiteQueuePublisher<E> implements Publisher<E> {
+    private final SQLitePersistentQueue<E> mQueue;
+    private final Executor mExecutor;
+    private final int mBatchSize;
+    private final long mLeaseMillis;
+
+    SQLiteQueuePublisher(SQLitePersistentQueue<E> queue, Executor executor, int batchSize, long leaseMillis) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, was " + batchSize);
+        }
+        mQueue = queue;
+        mExecutor = executor;
+        mBatchSize = batchSize;
+        mLeaseMillis = leaseMillis;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super E> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+        new QueueSubscription(subscriber).start();
+    }
+
+    private class QueueSubscription implements Subscription, Runnable {
+        private final Subscriber<? super E> mSubscriber;
+        private final AtomicLong mRequested = new AtomicLong();
+        /**
+         * The number of drain requests not yet handled. Only the thread that raised it from 0
+         * runs the drain loop, which keeps signals to the subscriber serial.
+         */
+        private final AtomicInteger mWip = new AtomicInteger();
+        private volatile boolean mCancelled;
+        private volatile Throwable mInvalidRequest;
+        /**
+         * Wakes up a subscription waiting for elements. A listener rather than an event bus
+         * subscriber, which would make every poll of the queue decode and publish its elements.
+         */
+        private final Runnable mOnElementsAdded = new Runnable() {
+            @Override
+            public void run() {
+                if (mRequested.get() > 0)
+                    schedule();
+            }
+        };
+        // Only touched by the drain loop.
+        private boolean mSubscribed;
+        private boolean mTerminated;
+        private List<SQLiteQueueLease<E>> mBatch;
+        private int mPosition;
+
+        QueueSubscription(Subscriber<? super E> subscriber) {
+            mSubscriber = subscriber;
+        }
+
+        void start() {
+            // The first drain calls onSubscribe, so that no other signal can overtake it.
+            schedule();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                mInvalidRequest = new IllegalArgumentException("Rule 3.9: request must be positive, was " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = mRequested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!mRequested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (mWip.getAndIncrement() == 0) {
+                mExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (!mTerminated) {
+                    drain();
+                }
+                missed = mWip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (!mSubscribed) {
+                mSubscribed = true;
+                mQueue.addElementsAddedListener(mOnElementsAdded);
+                mSubscriber.onSubscribe(this);
+            }
+            try {
+                while (!mCancelled && mInvalidRequest == null && mRequested.get() > 0) {
+                    if (mBatch == null) {
+                        int want = (int) Math.min(mRequested.get(), mBatchSize);
+                        mBatch = mQueue.reserve(want, mLeaseMillis, TimeUnit.MILLISECONDS);
+                        mPosition = 0;
+                        if (mBatch.isEmpty()) {
+                            mBatch = null;
+                            return;
+                        }
+                    }
+                    mSubscriber.onNext(mBatch.get(mPosition).getElement());
+                    // Only counted once onNext returns, so an element it threw on goes back.
+                    mPosition++;
+                    if (mPosition == mBatch.size()) {
+                        // Settle now rather than with the next batch, which may be a long time
+                        // coming if demand ran out; the lease would expire and redeliver it.
+                        settle();
+                    }
+                    if (mRequested.get() != Long.MAX_VALUE) {
+                        mRequested.decrementAndGet();
+                    }
+                }
+                if (mInvalidRequest != null) {
+                    terminate();
+                    mSubscriber.onError(mInvalidRequest);
+                } else if (mCancelled) {
+                    terminate();
+                }
+            } catch (RuntimeException e) {
+                terminate();
+                mSubscriber.onError(e);
+            }
+        }
+
+        /**
+         * Stops listening to the queue, settles what was emitted and gives the rest back.
+         */
+        private void terminate() {
+            mTerminated = true;
+            mQueue.removeElementsAddedListener(mOnElementsAdded);
+            if (mBatch != null) {
+                for (int i = mPosition; i < mBatch.size(); i++) {
+                    mQueue.nack(mBatch.get(i));
+                }
+            }
+            settle();
+        }
+
+        private void settle() {
+            if (mBatch != null && !mBatch.isEmpty()) {
+                mQueue.ackAll(mBatch.get(0).getToken());
+            }
+            mBatch = null;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.talview.sqlitepersistentqueue;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueEntry;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+
+import java.util.ArrayDeque;
+
+/**
+ * An in-memory copy of the next rows at the head of a FIFO queue.
+ * <p>
+ * The window is filled with a single range query and elements are only decoded once they are
+ * looked at, so a {@link #peek()} followed by a {@link #poll()} reads and decodes the head once.
+ * Polling through the window deletes the row by its id. If the row is gone, because somebody else
+ * removed it, the window is dropped and the next row is tried.
+ * <p>
+ * Rows added to a FIFO table always go after the ones already in the window, so the window only
+ * has to be {@link #invalidate() invalidated} when rows are removed other than through it, or put
+ * back in front of it.
+ */
+class SQLiteQueueReadAhead<E> {
+    private final SQLiteQueueTableManager mDbManager;
+    private final SQLiteQueueCodec<E> mCodec;
+    private final int mSize;
+    private final ArrayDeque<SQLiteQueuePayload<E>> mWindow;
+
+    SQLiteQueueReadAhead(SQLiteQueueTableManager manager, SQLiteQueueCodec<E> codec, int size) {
+        mDbManager = manager;
+        mCodec = codec;
+        mSize = size;
+        mWindow = new ArrayDeque<>(size);
+    }
+
+    /**
+     * Returns the head element without removing it, or null if the queue is empty.
+     */
+    synchronized E peek() {
+        SQLiteQueuePayload<E> head = head();
+        return head == null ? null : head.get();
+    }
+
+    /**
+     * Removes the head row and returns it, or null if the queue is empty. The element is decoded
+     * already if it was peeked at.
+     */
+    SQLiteQueuePayload<E> poll() {
+        while (true) {
+            SQLiteQueuePayload<E> head;
+            synchronized (this) {
+                head = head();
+                if (head == null)
+                    return null;
+                mWindow.pollFirst();
+            }
+            if (mDbManager.remove(head.getId()))
+                return head;
+            invalidate();
+        }
+    }
+
+    /**
+     * Drops the window; the next access reads the head from disk again.
+     */
+    synchronized void invalidate() {
+        mWindow.clear();
+    }
+
+    private SQLiteQueuePayload<E> head() {
+        if (mWindow.isEmpty()) {
+            for (SQLiteQueueEntry entry : mDbManager.getHeadEntries(mSize)) {
+                mWindow.addLast(new SQLiteQueuePayload<>(mCodec, entry));
+            }
+        }
+        return mWindow.peekFirst();
+    }
+}
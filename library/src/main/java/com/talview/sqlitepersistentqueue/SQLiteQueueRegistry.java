@@ -0,0 +1,180 @@
+package com.talview.sqlitepersistentqueue;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueConfig;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueDbHelper;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Hands out named queues that all live in one database and share a single connection.
+ * <p>
+ * Every name gets its own table, created the first time the queue is asked for, so queues never
+ * contend on each other's rows or indexes. Asking for the same name again returns the same queue
+ * instance; the converter and capacity only apply the first time. Names are not case-sensitive.
+ * Text and binary queues of the same name are separate queues.
+ * <p>
+ * Close the registry rather than the queues it handed out. Closing a queue only releases its
+ * hold on the connection, which stays open for the other queues until the registry is closed.
+ */
+public class SQLiteQueueRegistry implements Closeable {
+    private static final Pattern QUEUE_NAME = Pattern.compile("[A-Za-z0-9_]+");
+    private static final String NAME_SEPARATOR = "__";
+    /**
+     * Endings of the lease tables and indexes created next to every queue table, which a queue
+     * name must not end with or its table would be one of another queue's.
+     */
+    private static final String[] RESERVED_NAME_SUFFIXES = {SQLiteQueueTable.IN_FLIGHT_TABLE_SUFFIX, "_idx"};
+    private final SQLiteQueueDbHelper mDbHelper;
+    private final Map<String, SQLitePersistentQueue<?>> mQueues = new HashMap<>();
+
+    public SQLiteQueueRegistry(@NonNull Context context) {
+        this(context, SQLiteQueueConfig.PLATFORM_DEFAULTS);
+    }
+
+    /**
+     * Creates a registry whose database is opened with the given journal, sync and cache settings.
+     */
+    public SQLiteQueueRegistry(@NonNull Context context, @NonNull SQLiteQueueConfig config) {
+        this(new SQLiteQueueDbHelper(context.getApplicationContext(), config));
+    }
+
+    @VisibleForTesting
+    SQLiteQueueRegistry(@NonNull SQLiteQueueDbHelper dbHelper) {
+        mDbHelper = dbHelper;
+    }
+
+    /**
+     * Returns the queue with the given name, creating its table if needed.
+     *
+     * @param name letters, digits and underscores only, not ending in {@code _inflight} or
+     *             {@code _idx}.
+     */
+    @NonNull
+    public synchronized <E> SQLitePersistentQueue<E> getQueue(@NonNull String name,
+                                                              @NonNull QueueObjectConverter<E> objectConverter) {
+        String tableName = tableName(SQLiteQueueTable.TABLE_NAME, name);
+        SQLitePersistentQueue<E> queue = cachedQueue(tableName);
+        if (queue == null) {
+            queue = new SQLitePersistentQueue<>(SQLiteQueueCodec.text(objectConverter),
+                    openTable(tableName, false));
+            mQueues.put(tableName, queue);
+        }
+        return queue;
+    }
+
+    /**
+     * Returns the binary queue with the given name, creating its table if needed.
+     *
+     * @param name letters, digits and underscores only, not ending in {@code _inflight} or
+     *             {@code _idx}.
+     */
+    @NonNull
+    public synchronized <E> SQLitePersistentQueue<E> getQueue(@NonNull String name,
+                                                              @NonNull QueueObjectBinaryConverter<E> objectConverter) {
+        String tableName = tableName(SQLiteQueueTable.BLOB_TABLE_NAME, name);
+        SQLitePersistentQueue<E> queue = cachedQueue(tableName);
+        if (queue == null) {
+            queue = new SQLitePersistentQueue<>(SQLiteQueueCodec.binary(objectConverter),
+                    openTable(tableName, true));
+            mQueues.put(tableName, queue);
+        }
+        return queue;
+    }
+
+    /**
+     * Returns the blocking queue with the given name, creating its table if needed.
+     *
+     * @throws IllegalStateException if the name was already handed out as a non-blocking queue.
+     */
+    @NonNull
+    public synchronized <E> SQLitePersistentBlockingQueue<E> getBlockingQueue(@NonNull String name,
+                                                                              @NonNull QueueObjectConverter<E> objectConverter,
+                                                                              int capacity) {
+        String tableName = tableName(SQLiteQueueTable.TABLE_NAME, name);
+        SQLitePersistentBlockingQueue<E> queue = cachedBlockingQueue(tableName, name);
+        if (queue == null) {
+            queue = new SQLitePersistentBlockingQueue<>(SQLiteQueueCodec.text(objectConverter),
+                    openTable(tableName, false), capacity);
+            mQueues.put(tableName, queue);
+        }
+        return queue;
+    }
+
+    /**
+     * Returns the binary blocking queue with the given name, creating its table if needed.
+     *
+     * @throws IllegalStateException if the name was already handed out as a non-blocking queue.
+     */
+    @NonNull
+    public synchronized <E> SQLitePersistentBlockingQueue<E> getBlockingQueue(@NonNull String name,
+                                                                              @NonNull QueueObjectBinaryConverter<E> objectConverter,
+                                                                              int capacity) {
+        String tableName = tableName(SQLiteQueueTable.BLOB_TABLE_NAME, name);
+        SQLitePersistentBlockingQueue<E> queue = cachedBlockingQueue(tableName, name);
+        if (queue == null) {
+            queue = new SQLitePersistentBlockingQueue<>(SQLiteQueueCodec.binary(objectConverter),
+                    openTable(tableName, true), capacity);
+            mQueues.put(tableName, queue);
+        }
+        return queue;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E> SQLitePersistentQueue<E> cachedQueue(String tableName) {
+        return (SQLitePersistentQueue<E>) mQueues.get(tableName);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E> SQLitePersistentBlockingQueue<E> cachedBlockingQueue(String tableName, String name) {
+        SQLitePersistentQueue<E> queue = cachedQueue(tableName);
+        if (queue != null && !(queue instanceof SQLitePersistentBlockingQueue)) {
+            throw new IllegalStateException("Queue " + name + " is already open as a non-blocking queue");
+        }
+        return (SQLitePersistentBlockingQueue<E>) queue;
+    }
+
+    private SQLiteQueueTableManager openTable(String tableName, boolean blobValues) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        SQLiteQueueDbHelper.createQueueTable(db, tableName, blobValues);
+        return new SQLiteQueueTableManager(db, tableName, blobValues);
+    }
+
+    private static String tableName(String prefix, String name) {
+        if (name == null || !QUEUE_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Queue names may only contain letters, digits and " +
+                    "underscores, was " + name);
+        }
+        // SQLite table names are case-insensitive, so Foo and foo must be the same queue.
+        String lowerCaseName = name.toLowerCase(Locale.US);
+        for (String suffix : RESERVED_NAME_SUFFIXES) {
+            if (lowerCaseName.endsWith(suffix)) {
+                throw new IllegalArgumentException("Queue names may not end with " + suffix + ", was " + name);
+            }
+        }
+        return prefix + NAME_SEPARATOR + lowerCaseName;
+    }
+
+    /**
+     * Closes every queue handed out by this registry, then the shared connection.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (SQLitePersistentQueue<?> queue : mQueues.values()) {
+            queue.close();
+        }
+        mQueues.clear();
+        mDbHelper.close();
+    }
+}
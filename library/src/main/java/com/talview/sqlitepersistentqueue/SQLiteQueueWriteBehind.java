@@ -0,0 +1,246 @@
+package com.talview.sqlitepersistentqueue;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueInsertException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The in-memory buffer behind a queue's write-behind policy.
+ * <p>
+ * Producers convert the element on their own thread, so that the converter's exceptions reach
+ * them rather than every later flush, append it to a lock-free queue and return. Flushes take the
+ * buffered elements in order and write them in a single group commit; they are serialized by a
+ * lock so that two flushes can never commit their elements out of order.
+ * <p>
+ * The background thread only wakes up when there is something to write: the first element
+ * buffered schedules a single flush one interval later, and filling the buffer requests one right
+ * away.
+ * <p>
+ * Committed elements are published only after that lock is released, since publishing wakes up
+ * blocked consumers, which takes the locks they hold while polling, and polling flushes. Batches
+ * are queued in commit order and published by one thread at a time, whichever flushing thread
+ * finds nobody else publishing, so no thread ever waits to publish.
+ */
+class SQLiteQueueWriteBehind<E> {
+    private final SQLitePersistentQueue<E> mQueue;
+    private final SQLiteQueueCodec<E> mCodec;
+    private final int mMaxPending;
+    private final long mFlushIntervalMillis;
+    private final ConcurrentLinkedQueue<Buffered<E>> mPending = new ConcurrentLinkedQueue<>();
+    /**
+     * Elements offered but not yet committed, including those of a failed flush.
+     */
+    private final AtomicInteger mPendingCount = new AtomicInteger();
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+    private final AtomicBoolean mTimedFlushScheduled = new AtomicBoolean();
+    private final ReentrantLock mFlushLock = new ReentrantLock();
+    /**
+     * Elements a failed flush could not write, written first by the next one. Guarded by
+     * {@link #mFlushLock}.
+     */
+    private final List<Buffered<E>> mUnflushed = new ArrayList<>();
+    /**
+     * Committed batches waiting to be published, in commit order.
+     */
+    private final ConcurrentLinkedQueue<List<E>> mCommitted = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mPublishing = new AtomicBoolean();
+    private final ScheduledExecutorService mFlusher;
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                flush();
+            } catch (RuntimeException ignored) {
+                // The elements stay buffered and are retried by the next flush.
+            }
+        }
+    };
+    private final Runnable mTimedFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            mTimedFlushScheduled.set(false);
+            mFlushTask.run();
+            if (mPendingCount.get() > 0) {
+                // Left over by a failed flush, or offered while this one ran.
+                try {
+                    scheduleTimedFlush();
+                } catch (RejectedExecutionException ignored) {
+                    // Closed, and close() flushes.
+                }
+            }
+        }
+    };
+
+    SQLiteQueueWriteBehind(SQLitePersistentQueue<E> queue, SQLiteQueueWriteBehindPolicy policy) {
+        mQueue = queue;
+        mCodec = queue.getCodec();
+        mMaxPending = policy.getMaxPendingElements();
+        mFlushIntervalMillis = policy.getFlushIntervalMillis();
+        mFlusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SQLiteQueueWriteBehind");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Buffers the element.
+     *
+     * @throws RuntimeException if the converter cannot serialize it. Nothing is buffered then.
+     */
+    void offer(E e) {
+        mPending.offer(new Buffered<>(e, mCodec.encode(e)));
+        int pending = mPendingCount.incrementAndGet();
+        if (mFlusher.isShutdown()) {
+            // Closed, or replaced by another policy: nothing would write the element otherwise.
+            flush();
+            return;
+        }
+        try {
+            scheduleTimedFlush();
+            if (pending >= mMaxPending && mFlushScheduled.compareAndSet(false, true)) {
+                mFlusher.execute(mFlushTask);
+            }
+        } catch (RejectedExecutionException ex) {
+            flush();
+        }
+    }
+
+    private void scheduleTimedFlush() {
+        if (mTimedFlushScheduled.compareAndSet(false, true)) {
+            mFlusher.schedule(mTimedFlushTask, mFlushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    int getPendingCount() {
+        return mPendingCount.get();
+    }
+
+    /**
+     * Writes every element offered so far, in order, and publishes them as added. If another
+     * thread is publishing at the time, it publishes them instead, right after its own.
+     *
+     * @throws RuntimeException if an element could not be stored. It stays buffered, along with
+     *                          every element after it; the ones before it are committed and
+     *                          published.
+     */
+    void flush() {
+        if (mPendingCount.get() == 0)
+            return;
+        RuntimeException failure = null;
+        mFlushLock.lock();
+        try {
+            mFlushScheduled.set(false);
+            List<Buffered<E>> batch = new ArrayList<>(mUnflushed);
+            mUnflushed.clear();
+            Buffered<E> buffered;
+            while ((buffered = mPending.poll()) != null) {
+                batch.add(buffered);
+            }
+            if (batch.isEmpty())
+                return;
+            List<E> elements = new ArrayList<>(batch.size());
+            List<Object> values = new ArrayList<>(batch.size());
+            for (Buffered<E> b : batch) {
+                elements.add(b.mElement);
+                values.add(b.mValue);
+            }
+            int inserted = 0;
+            Throwable cause = null;
+            try {
+                // One transaction per sub-batch, so that a failure rolls back only its own.
+                int batchSize = mQueue.getInsertBatchSize();
+                while (inserted < batch.size()) {
+                    int batchEnd = Math.min(inserted + batchSize, batch.size());
+                    inserted += mQueue.insertEncoded(elements.subList(inserted, batchEnd),
+                            values.subList(inserted, batchEnd), batchSize);
+                }
+            } catch (SQLiteQueueInsertException ex) {
+                inserted += ex.getInsertedCount();
+                cause = ex.getCause();
+            } catch (RuntimeException ex) {
+                cause = ex;
+            }
+            mPendingCount.addAndGet(-inserted);
+            if (inserted > 0) {
+                mCommitted.offer(elements.subList(0, inserted));
+            }
+            if (inserted < batch.size()) {
+                mUnflushed.addAll(batch.subList(inserted, batch.size()));
+                failure = new RuntimeException("Failed to add element e = " + elements.get(inserted), cause);
+            }
+        } finally {
+            mFlushLock.unlock();
+        }
+        publishCommitted();
+        if (failure != null)
+            throw failure;
+    }
+
+    private void publishCommitted() {
+        while (!mCommitted.isEmpty() && mPublishing.compareAndSet(false, true)) {
+            try {
+                List<E> committed;
+                while ((committed = mCommitted.poll()) != null) {
+                    mQueue.notifyAddedAll(committed);
+                }
+            } finally {
+                mPublishing.set(false);
+            }
+        }
+    }
+
+    /**
+     * Drops every buffered element without writing it.
+     *
+     * @return the number of elements dropped.
+     */
+    int discard() {
+        mFlushLock.lock();
+        try {
+            int discarded = mUnflushed.size();
+            mUnflushed.clear();
+            while (mPending.poll() != null) {
+                discarded++;
+            }
+            mPendingCount.addAndGet(-discarded);
+            return discarded;
+        } finally {
+            mFlushLock.unlock();
+        }
+    }
+
+    /**
+     * Flushes what is buffered and stops the background thread.
+     */
+    void close() {
+        mFlusher.shutdown();
+        flush();
+    }
+
+    /**
+     * A buffered element along with the value it was serialized into.
+     */
+    private static class Buffered<E> {
+        final E mElement;
+        final Object mValue;
+
+        Buffered(E element, Object value) {
+            mElement = element;
+            mValue = value;
+        }
+    }
+}
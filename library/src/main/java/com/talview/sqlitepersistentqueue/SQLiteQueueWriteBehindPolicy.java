@@ -0,0 +1,76 @@
+package com.talview.sqlitepersistentqueue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when elements offered to a queue reach the disk.
+ * <p>
+ * {@link #FLUSH_ON_OFFER}, the default, writes every element on the offering thread before
+ * {@code offer()} returns. Any other policy makes {@code offer()} only hand the element to an
+ * in-memory buffer, which a background thread writes out in one transaction one
+ * {@link #getFlushIntervalMillis() flush interval} after the first element was buffered, or as
+ * soon as {@link #getMaxPendingElements() enough elements} are waiting. Elements still in the buffer are
+ * lost if the process dies, so only use write-behind for data that can afford it, and call
+ * {@link SQLitePersistentQueue#flush()} at points where everything offered so far must be on disk.
+ */
+public class SQLiteQueueWriteBehindPolicy {
+    public static final SQLiteQueueWriteBehindPolicy FLUSH_ON_OFFER = new Builder()
+            .setFlushInterval(0, TimeUnit.MILLISECONDS)
+            .build();
+
+    private final long mFlushIntervalMillis;
+    private final int mMaxPendingElements;
+
+    private SQLiteQueueWriteBehindPolicy(Builder builder) {
+        mFlushIntervalMillis = builder.mFlushIntervalMillis;
+        mMaxPendingElements = builder.mMaxPendingElements;
+    }
+
+    public long getFlushIntervalMillis() {
+        return mFlushIntervalMillis;
+    }
+
+    public int getMaxPendingElements() {
+        return mMaxPendingElements;
+    }
+
+    /**
+     * Returns whether elements are written on the offering thread, without any buffering.
+     */
+    public boolean isFlushOnOffer() {
+        return mFlushIntervalMillis == 0;
+    }
+
+    public static class Builder {
+        private long mFlushIntervalMillis = 50;
+        private int mMaxPendingElements = SQLitePersistentQueue.DEFAULT_INSERT_BATCH_SIZE;
+
+        /**
+         * The longest an offered element waits in memory. 0 writes every element on the offering
+         * thread.
+         */
+        public Builder setFlushInterval(long interval, TimeUnit unit) {
+            if (interval < 0) {
+                throw new IllegalArgumentException("Flush interval must not be negative, was " + interval);
+            }
+            mFlushIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * The number of waiting elements that triggers a flush before the interval is up.
+         */
+        public Builder setMaxPendingElements(int maxPendingElements) {
+            if (maxPendingElements < 1) {
+                throw new IllegalArgumentException("Max pending elements must be at least 1, was " +
+                        maxPendingElements);
+            }
+            mMaxPendingElements = maxPendingElements;
+            return this;
+        }
+
+        public SQLiteQueueWriteBehindPolicy build() {
+            return new SQLiteQueueWriteBehindPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the queue's statements on an Android {@link SQLiteDatabase}. Closing the storage closes the
+ * database, or releases one reference on it if it is shared.
+ */
+class SQLiteQueueAndroidStorage implements SQLiteQueueStorage {
+    private final SQLiteDatabase mDb;
+
+    SQLiteQueueAndroidStorage(SQLiteDatabase db) {
+        mDb = db;
+    }
+
+    @Override
+    public void execSQL(String sql, Object... bindArgs) {
+        if (bindArgs.length == 0)
+            mDb.execSQL(sql);
+        else
+            mDb.execSQL(sql, bindArgs);
+    }
+
+    @Override
+    public long executeInsert(String sql, Object... bindArgs) {
+        SQLiteStatement statement = compile(sql, bindArgs);
+        try {
+            return statement.executeInsert();
+        } catch (SQLException e) {
+            // Same as SQLiteDatabase.insert(), which the queue used before.
+            return -1;
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Override
+    public int executeUpdateDelete(String sql, Object... bindArgs) {
+        SQLiteStatement statement = compile(sql, bindArgs);
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+                return statement.executeUpdateDelete();
+            statement.execute();
+        } finally {
+            statement.close();
+        }
+        return (int) queryForLong("SELECT changes()", 0);
+    }
+
+    @Override
+    public long queryForLong(String sql, long defaultValue, Object... bindArgs) {
+        SQLiteStatement statement = compile(sql, bindArgs);
+        try {
+            return statement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return defaultValue;
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Override
+    public List<SQLiteQueueEntry> queryEntries(String sql, boolean blobValues, Object... bindArgs) {
+        String[] selectionArgs = null;
+        if (bindArgs.length > 0) {
+            // rawQuery() only binds strings, SQLite converts them to the column's affinity.
+            selectionArgs = new String[bindArgs.length];
+            for (int i = 0; i < bindArgs.length; i++) {
+                selectionArgs[i] = String.valueOf(bindArgs[i]);
+            }
+        }
+        Cursor c = mDb.rawQuery(sql, selectionArgs);
+        try {
+            List<SQLiteQueueEntry> entries = new ArrayList<>(c.getCount());
+            while (c.moveToNext()) {
+                if (blobValues)
+                    entries.add(new SQLiteQueueEntry(c.getLong(0), c.getBlob(1)));
+                else
+                    entries.add(new SQLiteQueueEntry(c.getLong(0), c.getString(1)));
+            }
+            return entries;
+        } finally {
+            c.close();
+        }
+    }
+
+    @Override
+    public Statement compileStatement(String sql) {
+        final SQLiteStatement statement = mDb.compileStatement(sql);
+        return new Statement() {
+            @Override
+            public void bindNull(int index) {
+                statement.bindNull(index);
+            }
+
+            @Override
+            public void bindLong(int index, long value) {
+                statement.bindLong(index, value);
+            }
+
+            @Override
+            public void bindString(int index, String value) {
+                statement.bindString(index, value);
+            }
+
+            @Override
+            public void bindBlob(int index, byte[] value) {
+                statement.bindBlob(index, value);
+            }
+
+            @Override
+            public long executeInsert() {
+                return statement.executeInsert();
+            }
+
+            @Override
+            public void close() {
+                statement.close();
+            }
+        };
+    }
+
+    @Override
+    public void beginTransaction() {
+        mDb.beginTransaction();
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        mDb.setTransactionSuccessful();
+    }
+
+    @Override
+    public void endTransaction() {
+        mDb.endTransaction();
+    }
+
+    @Override
+    public void close() {
+        mDb.close();
+    }
+
+    private SQLiteStatement compile(String sql, Object[] bindArgs) {
+        SQLiteStatement statement = mDb.compileStatement(sql);
+        for (int i = 0; i < bindArgs.length; i++) {
+            Object arg = bindArgs[i];
+            if (arg == null)
+                statement.bindNull(i + 1);
+            else if (arg instanceof byte[])
+                statement.bindBlob(i + 1, (byte[]) arg);
+            else if (arg instanceof Number)
+                statement.bindLong(i + 1, ((Number) arg).longValue());
+            else
+                statement.bindString(i + 1, arg.toString());
+        }
+        return statement;
+    }
+}
@@ -0,0 +1,161 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tunes how the queue database is opened: journal mode, how often SQLite syncs to disk and how
+ * much it caches.
+ * <p>
+ * {@code new SQLiteQueueConfig.Builder().build()} gives a profile suited to high enqueue and
+ * dequeue rates: write-ahead logging, {@code synchronous = NORMAL} and temporary storage in
+ * memory. With WAL, NORMAL only syncs at checkpoints, so a power loss may roll back the last few
+ * commits but never corrupts the queue. Use {@link #SYNCHRONOUS_FULL} when every committed item
+ * must survive a power cut.
+ * <p>
+ * {@link #PLATFORM_DEFAULTS} leaves every setting as Android opens the database, which is what
+ * the queue constructors that take no config use.
+ */
+public class SQLiteQueueConfig {
+    /**
+     * Leave the setting as SQLite or the platform configures it.
+     */
+    public static final int UNSET = -1;
+    public static final int SYNCHRONOUS_OFF = 0;
+    public static final int SYNCHRONOUS_NORMAL = 1;
+    public static final int SYNCHRONOUS_FULL = 2;
+    public static final int TEMP_STORE_DEFAULT = 0;
+    public static final int TEMP_STORE_FILE = 1;
+    public static final int TEMP_STORE_MEMORY = 2;
+
+    public static final SQLiteQueueConfig PLATFORM_DEFAULTS = new Builder()
+            .setWriteAheadLoggingEnabled(false)
+            .setSynchronous(UNSET)
+            .setTempStore(UNSET)
+            .build();
+
+    private final boolean mWriteAheadLoggingEnabled;
+    private final int mSynchronous;
+    private final int mPageSize;
+    private final int mCacheSize;
+    private final int mTempStore;
+
+    private SQLiteQueueConfig(Builder builder) {
+        mWriteAheadLoggingEnabled = builder.mWriteAheadLoggingEnabled;
+        mSynchronous = builder.mSynchronous;
+        mPageSize = builder.mPageSize;
+        mCacheSize = builder.mCacheSize;
+        mTempStore = builder.mTempStore;
+    }
+
+    public boolean isWriteAheadLoggingEnabled() {
+        return mWriteAheadLoggingEnabled;
+    }
+
+    public int getSynchronous() {
+        return mSynchronous;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    public int getCacheSize() {
+        return mCacheSize;
+    }
+
+    public int getTempStore() {
+        return mTempStore;
+    }
+
+    /**
+     * Returns the PRAGMA statements to run on the connection, in order. Journal mode and page
+     * size are not included since they apply to the database file rather than the connection.
+     * <p>
+     * On Android they only reach the primary connection, the one every write goes through. In WAL
+     * mode reads may run on pooled secondary connections, which Android opens without a hook to
+     * configure them, so those keep the default cache size and temp store.
+     */
+    List<String> getConnectionPragmas() {
+        List<String> pragmas = new ArrayList<>(3);
+        if (mSynchronous != UNSET)
+            pragmas.add("PRAGMA synchronous = " + mSynchronous);
+        if (mCacheSize != 0)
+            pragmas.add("PRAGMA cache_size = " + mCacheSize);
+        if (mTempStore != UNSET)
+            pragmas.add("PRAGMA temp_store = " + mTempStore);
+        return pragmas;
+    }
+
+    public static class Builder {
+        private boolean mWriteAheadLoggingEnabled = true;
+        private int mSynchronous = SYNCHRONOUS_NORMAL;
+        private int mPageSize = UNSET;
+        private int mCacheSize = 0;
+        private int mTempStore = TEMP_STORE_MEMORY;
+
+        /**
+         * Lets readers and the writer proceed concurrently and turns most commits into a single
+         * sequential append. Only honoured from API 11 on.
+         */
+        public Builder setWriteAheadLoggingEnabled(boolean enabled) {
+            mWriteAheadLoggingEnabled = enabled;
+            return this;
+        }
+
+        /**
+         * One of {@link #SYNCHRONOUS_OFF}, {@link #SYNCHRONOUS_NORMAL}, {@link #SYNCHRONOUS_FULL}
+         * or {@link #UNSET}.
+         */
+        public Builder setSynchronous(int synchronous) {
+            if (synchronous < UNSET || synchronous > SYNCHRONOUS_FULL) {
+                throw new IllegalArgumentException("Unsupported synchronous level " + synchronous);
+            }
+            mSynchronous = synchronous;
+            return this;
+        }
+
+        /**
+         * The page size in bytes, a power of two between 512 and 65536. SQLite can only change it
+         * while the database is empty, so it only takes effect when the database is created, and
+         * only from API 16 on.
+         */
+        public Builder setPageSize(int pageSize) {
+            if (pageSize != UNSET
+                    && (pageSize < 512 || pageSize > 65536 || Integer.bitCount(pageSize) != 1)) {
+                throw new IllegalArgumentException("Page size must be a power of two between 512 " +
+                        "and 65536, was " + pageSize);
+            }
+            mPageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * The page cache size with {@code PRAGMA cache_size} semantics: a positive value is a
+         * number of pages, a negative value a number of KiB. 0 keeps the SQLite default. On
+         * Android it applies to the primary, writing connection only, not to the pooled
+         * connections WAL mode may read through.
+         */
+        public Builder setCacheSize(int cacheSize) {
+            mCacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * One of {@link #TEMP_STORE_DEFAULT}, {@link #TEMP_STORE_FILE},
+         * {@link #TEMP_STORE_MEMORY} or {@link #UNSET}. Like the cache size, it only reaches the
+         * primary connection on Android.
+         */
+        public Builder setTempStore(int tempStore) {
+            if (tempStore < UNSET || tempStore > TEMP_STORE_MEMORY) {
+                throw new IllegalArgumentException("Unsupported temp store " + tempStore);
+            }
+            mTempStore = tempStore;
+            return this;
+        }
+
+        public SQLiteQueueConfig build() {
+            return new SQLiteQueueConfig(this);
+        }
+    }
+}
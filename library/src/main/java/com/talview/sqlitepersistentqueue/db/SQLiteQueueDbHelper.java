@@ -2,28 +2,54 @@ package com.talview.sqlitepersistentqueue.db;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.support.annotation.VisibleForTesting;
 
 import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
 
 /**
  * A sqlite helper class for SqliteQueue.
+ * <p>
+ * Upgrades never drop the queue table. Each version bump is a {@link SQLiteQueueMigration} that
+ * alters the schema in place, and any rows it needs to rewrite are rewritten in chunks on a
+ * background thread after the database is opened, so the queue stays usable meanwhile.
  */
 public class SQLiteQueueDbHelper extends SQLiteOpenHelper {
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 4;
     private static final String DATABASE_NAME = "SqliteQueue.db";
-    private static final String TEXT_TYPE = " TEXT";
-    private static final String COMMA_SEP = ",";
+    private static final int DATA_MIGRATION_CHUNK_SIZE = 200;
     private static final String SQL_CREATE_ENTRIES =
-            "CREATE TABLE " + SQLiteQueueTable.TABLE_NAME + " (" +
-                    SQLiteQueueTable._ID + " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL" + COMMA_SEP +
-                    SQLiteQueueTable.COLUMN_NAME_VALUE + TEXT_TYPE + " )";
+            SQLiteQueueSchema.sqlCreateTable(SQLiteQueueTable.TABLE_NAME, SQLiteQueueSchema.TEXT_TYPE, null);
 
-    private static final String SQL_DELETE_ENTRIES =
-            "DROP TABLE IF EXISTS " + SQLiteQueueTable.TABLE_NAME;
+    static final String SQL_CREATE_VALUE_HASH_INDEX = SQLiteQueueSchema.sqlCreateValueHashIndex(
+            SQLiteQueueTable.INDEX_NAME_VALUE_HASH, SQLiteQueueTable.TABLE_NAME);
+
+    static final String SQL_CREATE_BLOB_ENTRIES =
+            SQLiteQueueSchema.sqlCreateTable(SQLiteQueueTable.BLOB_TABLE_NAME, SQLiteQueueSchema.BLOB_TYPE, null);
+
+    static final String SQL_CREATE_BLOB_VALUE_HASH_INDEX = SQLiteQueueSchema.sqlCreateValueHashIndex(
+            SQLiteQueueTable.BLOB_INDEX_NAME_VALUE_HASH, SQLiteQueueTable.BLOB_TABLE_NAME);
+
+    private final SQLiteQueueConfig mConfig;
 
     public SQLiteQueueDbHelper(Context context) {
+        this(context, SQLiteQueueConfig.PLATFORM_DEFAULTS);
+    }
+
+    public SQLiteQueueDbHelper(Context context, SQLiteQueueConfig config) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mConfig = config;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        applyConfig(db);
     }
 
     /**
@@ -32,6 +58,11 @@ public class SQLiteQueueDbHelper extends SQLiteOpenHelper {
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SQL_CREATE_ENTRIES);
+        db.execSQL(SQL_CREATE_VALUE_HASH_INDEX);
+        db.execSQL(SQL_CREATE_BLOB_ENTRIES);
+        db.execSQL(SQL_CREATE_BLOB_VALUE_HASH_INDEX);
+        createInFlightTable(db, SQLiteQueueTable.TABLE_NAME, false, null);
+        createInFlightTable(db, SQLiteQueueTable.BLOB_TABLE_NAME, true, null);
     }
 
     /**
@@ -39,7 +70,122 @@ public class SQLiteQueueDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL(SQL_DELETE_ENTRIES);
-        onCreate(db);
+        for (SQLiteQueueMigration migration : SQLiteQueueMigrations.ALL) {
+            if (migration.version > oldVersion && migration.version <= newVersion) {
+                migration.migrateSchema(db);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onOpen(final SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            // onConfigure() is only called from API 16 on.
+            applyConfig(db);
+        }
+        if (!hasPendingDataMigrations(db))
+            return;
+        Thread migrator = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runDataMigrations(db);
+                } catch (IllegalStateException | SQLiteException ignored) {
+                    // The database was closed under us, the remaining rows are migrated on the
+                    // next open.
+                }
+            }
+        }, "SQLiteQueueDataMigration");
+        migrator.setDaemon(true);
+        migrator.start();
+    }
+
+    /**
+     * Creates a queue table with the given name, along with its value hash index, unless it
+     * already exists. Tables created this way are not part of the versioned schema, they are
+     * created on demand at the current one.
+     *
+     * @param blobValues whether the table stores its values as BLOB rather than TEXT.
+     */
+    public static void createQueueTable(SQLiteDatabase db, String tableName, boolean blobValues) {
+        createQueueTable(db, tableName, blobValues, null);
+    }
+
+    /**
+     * Like {@link #createQueueTable(SQLiteDatabase, String, boolean)}, adding an integer order
+     * column that defaults to 0 and an index on it and the id, so the head of the queue is read
+     * from the index rather than sorted.
+     *
+     * @param orderColumn the order column, or null for a plain FIFO table.
+     * @see SQLiteQueueSchema#createQueueTable(SQLiteQueueStorage, String, boolean, String)
+     */
+    public static void createQueueTable(SQLiteDatabase db, String tableName, boolean blobValues,
+                                        String orderColumn) {
+        for (String sql : SQLiteQueueSchema.sqlCreateQueueTable(tableName, blobValues, orderColumn)) {
+            db.execSQL(sql);
+        }
+    }
+
+    /**
+     * Creates the table holding the leased rows of a queue table, unless it already exists.
+     */
+    static void createInFlightTable(SQLiteDatabase db, String tableName, boolean blobValues,
+                                    String orderColumn) {
+        for (String sql : SQLiteQueueSchema.sqlCreateInFlightTable(tableName, blobValues, orderColumn)) {
+            db.execSQL(sql);
+        }
+    }
+
+    /**
+     * Applies the config to the primary connection. Android gives no hook for the secondary
+     * connections it pools for reads in WAL mode, so they keep their defaults.
+     */
+    private void applyConfig(SQLiteDatabase db) {
+        // Below API 16 this only runs from onOpen(), when onCreate() already set the version, so
+        // the page size of a new database is never changed there.
+        if (mConfig.getPageSize() != SQLiteQueueConfig.UNSET && db.getVersion() == 0) {
+            // The file already holds the platform's metadata table, so the new page size only
+            // applies once the database is rebuilt.
+            db.setPageSize(mConfig.getPageSize());
+            db.execSQL("VACUUM");
+        }
+        if (mConfig.isWriteAheadLoggingEnabled()
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            db.enableWriteAheadLogging();
+        }
+        for (String pragma : mConfig.getConnectionPragmas()) {
+            db.execSQL(pragma);
+        }
+    }
+
+    private static boolean hasPendingDataMigrations(SQLiteDatabase db) {
+        for (SQLiteQueueMigration migration : SQLiteQueueMigrations.ALL) {
+            if (migration.hasPendingData(db))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs the data part of every migration to completion, one short transaction per chunk.
+     */
+    @VisibleForTesting
+    static void runDataMigrations(SQLiteDatabase db) {
+        for (SQLiteQueueMigration migration : SQLiteQueueMigrations.ALL) {
+            int rewritten;
+            do {
+                db.beginTransaction();
+                try {
+                    rewritten = migration.migrateData(db, DATA_MIGRATION_CHUNK_SIZE);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            } while (rewritten > 0);
+        }
     }
 }
@@ -0,0 +1,35 @@
+package com.talview.sqlitepersistentqueue.db;
+
+/**
+ * A row of a sqlite queue table, its id along with the stored value. Rows of text tables carry a
+ * {@link #getValue() string}, rows of blob tables carry {@link #getBytes() bytes}.
+ */
+public class SQLiteQueueEntry {
+    private final long mId;
+    private final String mValue;
+    private final byte[] mBytes;
+
+    public SQLiteQueueEntry(long id, String value) {
+        mId = id;
+        mValue = value;
+        mBytes = null;
+    }
+
+    public SQLiteQueueEntry(long id, byte[] bytes) {
+        mId = id;
+        mValue = null;
+        mBytes = bytes;
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public String getValue() {
+        return mValue;
+    }
+
+    public byte[] getBytes() {
+        return mBytes;
+    }
+}
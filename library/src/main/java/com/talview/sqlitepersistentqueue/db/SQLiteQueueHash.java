@@ -0,0 +1,37 @@
+package com.talview.sqlitepersistentqueue.db;
+
+/**
+ * Computes the 64 bit hash stored alongside every value, so lookups by value can go through an
+ * index instead of comparing every payload in the table.
+ * <p>
+ * This is FNV-1a over the UTF-16 code units of a string value, or over the bytes of a binary
+ * value. The hash is persisted, so it must never change for a given value.
+ */
+final class SQLiteQueueHash {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SQLiteQueueHash() {
+    }
+
+    static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    static long hash(byte[] value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,23 @@
+package com.talview.sqlitepersistentqueue.db;
+
+/**
+ * Thrown when a row of a batched insert could not be stored. The batch it belongs to is rolled
+ * back, while the rows committed by earlier batches stay; {@link #getInsertedCount()} says how
+ * many those are. The cause is the failure of the row itself.
+ */
+public class SQLiteQueueInsertException extends RuntimeException {
+    private final int mInsertedCount;
+
+    public SQLiteQueueInsertException(String message, int insertedCount, Throwable cause) {
+        super(message, cause);
+        mInsertedCount = insertedCount;
+    }
+
+    /**
+     * Returns the number of values committed before the failure, which are the first ones of
+     * the list that was inserted.
+     */
+    public int getInsertedCount() {
+        return mInsertedCount;
+    }
+}
@@ -0,0 +1,324 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs the queue's statements on a JDBC connection to a SQLite database, such as one opened with
+ * the xerial sqlite-jdbc driver, so the queue works on a plain JVM:
+ * <pre>
+ * SQLiteQueueStorage storage = new SQLiteQueueJdbcStorage(
+ *         DriverManager.getConnection("jdbc:sqlite:queue.db"));
+ * SQLiteQueueSchema.createQueueTable(storage, SQLiteQueueTable.TABLE_NAME, false);
+ * SQLitePersistentQueue&lt;String&gt; queue = new SQLitePersistentQueue&lt;&gt;(converter,
+ *         new SQLiteQueueTableManager(storage, SQLiteQueueTable.TABLE_NAME, false));
+ * </pre>
+ * Like an Android database, the storage can be used from several threads. Statements run one at a
+ * time, and a transaction holds the connection for the thread that began it until it ends.
+ * <p>
+ * Failing statements throw a {@link RuntimeException} wrapping the {@link SQLException}. Closing
+ * the storage closes the connection.
+ */
+public class SQLiteQueueJdbcStorage implements SQLiteQueueStorage {
+    private final Connection mConnection;
+    private final ReentrantLock mLock = new ReentrantLock();
+    /**
+     * Whether each open transaction level, innermost last, was marked successful. Guarded by
+     * {@link #mLock}.
+     */
+    private final ArrayDeque<Boolean> mTransactionLevels = new ArrayDeque<>();
+    private boolean mRollbackOnly;
+
+    public SQLiteQueueJdbcStorage(Connection connection) {
+        mConnection = connection;
+    }
+
+    /**
+     * Creates a storage on the given connection and applies the config's journal mode, page size
+     * and PRAGMAs to it. As with {@link SQLiteQueueDbHelper}, the page size only changes while
+     * the database is empty.
+     */
+    public SQLiteQueueJdbcStorage(Connection connection, SQLiteQueueConfig config) {
+        this(connection);
+        if (config.getPageSize() != SQLiteQueueConfig.UNSET && queryForLong("PRAGMA page_count", 0) == 0)
+            execSQL("PRAGMA page_size = " + config.getPageSize());
+        if (config.isWriteAheadLoggingEnabled())
+            execSQL("PRAGMA journal_mode = WAL");
+        for (String pragma : config.getConnectionPragmas()) {
+            execSQL(pragma);
+        }
+    }
+
+    @Override
+    public void execSQL(String sql, Object... bindArgs) {
+        mLock.lock();
+        try {
+            PreparedStatement statement = prepare(sql, bindArgs);
+            try {
+                statement.execute();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw failed(sql, e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public long executeInsert(String sql, Object... bindArgs) {
+        mLock.lock();
+        try {
+            PreparedStatement statement = prepare(sql, bindArgs);
+            try {
+                return insert(statement);
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            // Same as the Android storage, which follows SQLiteDatabase.insert().
+            return -1;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int executeUpdateDelete(String sql, Object... bindArgs) {
+        mLock.lock();
+        try {
+            PreparedStatement statement = prepare(sql, bindArgs);
+            try {
+                return statement.executeUpdate();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw failed(sql, e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public long queryForLong(String sql, long defaultValue, Object... bindArgs) {
+        mLock.lock();
+        try {
+            PreparedStatement statement = prepare(sql, bindArgs);
+            try {
+                ResultSet rs = statement.executeQuery();
+                return rs.next() ? rs.getLong(1) : defaultValue;
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw failed(sql, e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public List<SQLiteQueueEntry> queryEntries(String sql, boolean blobValues, Object... bindArgs) {
+        mLock.lock();
+        try {
+            PreparedStatement statement = prepare(sql, bindArgs);
+            try {
+                ResultSet rs = statement.executeQuery();
+                List<SQLiteQueueEntry> entries = new ArrayList<>();
+                while (rs.next()) {
+                    if (blobValues)
+                        entries.add(new SQLiteQueueEntry(rs.getLong(1), rs.getBytes(2)));
+                    else
+                        entries.add(new SQLiteQueueEntry(rs.getLong(1), rs.getString(2)));
+                }
+                return entries;
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw failed(sql, e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public SQLiteQueueStorage.Statement compileStatement(final String sql) {
+        final PreparedStatement statement;
+        try {
+            statement = mConnection.prepareStatement(sql);
+        } catch (SQLException e) {
+            throw failed(sql, e);
+        }
+        return new SQLiteQueueStorage.Statement() {
+            @Override
+            public void bindNull(int index) {
+                try {
+                    statement.setNull(index, Types.NULL);
+                } catch (SQLException e) {
+                    throw failed(sql, e);
+                }
+            }
+
+            @Override
+            public void bindLong(int index, long value) {
+                try {
+                    statement.setLong(index, value);
+                } catch (SQLException e) {
+                    throw failed(sql, e);
+                }
+            }
+
+            @Override
+            public void bindString(int index, String value) {
+                try {
+                    statement.setString(index, value);
+                } catch (SQLException e) {
+                    throw failed(sql, e);
+                }
+            }
+
+            @Override
+            public void bindBlob(int index, byte[] value) {
+                try {
+                    statement.setBytes(index, value);
+                } catch (SQLException e) {
+                    throw failed(sql, e);
+                }
+            }
+
+            @Override
+            public long executeInsert() {
+                mLock.lock();
+                try {
+                    long rowId = insert(statement);
+                    if (rowId == -1)
+                        throw new RuntimeException("No row inserted by " + sql);
+                    return rowId;
+                } catch (SQLException e) {
+                    throw failed(sql, e);
+                } finally {
+                    mLock.unlock();
+                }
+            }
+
+            @Override
+            public void close() {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    throw failed(sql, e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void beginTransaction() {
+        mLock.lock();
+        try {
+            if (mTransactionLevels.isEmpty()) {
+                mConnection.setAutoCommit(false);
+                mRollbackOnly = false;
+            }
+            mTransactionLevels.push(false);
+        } catch (SQLException e) {
+            mLock.unlock();
+            throw failed("BEGIN", e);
+        }
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        checkInTransaction();
+        mTransactionLevels.pop();
+        mTransactionLevels.push(true);
+    }
+
+    @Override
+    public void endTransaction() {
+        checkInTransaction();
+        try {
+            if (!mTransactionLevels.pop())
+                mRollbackOnly = true;
+            if (mTransactionLevels.isEmpty()) {
+                try {
+                    if (mRollbackOnly)
+                        mConnection.rollback();
+                    else
+                        mConnection.commit();
+                } finally {
+                    mConnection.setAutoCommit(true);
+                }
+            }
+        } catch (SQLException e) {
+            throw failed(mRollbackOnly ? "ROLLBACK" : "COMMIT", e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        mLock.lock();
+        try {
+            mConnection.close();
+        } catch (SQLException e) {
+            throw failed("close", e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void checkInTransaction() {
+        if (!mLock.isHeldByCurrentThread() || mTransactionLevels.isEmpty()) {
+            throw new IllegalStateException("No transaction in progress on this thread");
+        }
+    }
+
+    private PreparedStatement prepare(String sql, Object[] bindArgs) throws SQLException {
+        PreparedStatement statement = mConnection.prepareStatement(sql);
+        for (int i = 0; i < bindArgs.length; i++) {
+            Object arg = bindArgs[i];
+            if (arg == null)
+                statement.setNull(i + 1, Types.NULL);
+            else if (arg instanceof byte[])
+                statement.setBytes(i + 1, (byte[]) arg);
+            else if (arg instanceof Number)
+                statement.setLong(i + 1, ((Number) arg).longValue());
+            else
+                statement.setString(i + 1, arg.toString());
+        }
+        return statement;
+    }
+
+    /**
+     * Runs a prepared INSERT and returns the new row id, or -1 if it inserted nothing. Must be
+     * called with {@link #mLock} held, so that the id read back is the one of this insert.
+     */
+    private long insert(PreparedStatement statement) throws SQLException {
+        if (statement.executeUpdate() == 0)
+            return -1;
+        java.sql.Statement lastRowId = mConnection.createStatement();
+        try {
+            ResultSet rs = lastRowId.executeQuery("SELECT last_insert_rowid()");
+            rs.next();
+            return rs.getLong(1);
+        } finally {
+            lastRowId.close();
+        }
+    }
+
+    private static RuntimeException failed(String sql, SQLException e) {
+        return new RuntimeException("Failed to run " + sql, e);
+    }
+}
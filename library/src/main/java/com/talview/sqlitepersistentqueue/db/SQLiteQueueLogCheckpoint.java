@@ -0,0 +1,103 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * The position of the head of a {@link SQLiteQueueSegmentLog}, kept in a small file of two slots
+ * written in turn. Each slot carries a version and a checksum, so a write torn by a crash leaves
+ * the previous position readable in the other slot.
+ */
+class SQLiteQueueLogCheckpoint implements Closeable {
+    static final String FILE_NAME = "head.checkpoint";
+    private static final int SLOT_SIZE = 64;
+    private static final int RECORD_SIZE = 4 * 8 + 4;
+
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 mCrc = new CRC32();
+    private long mVersion;
+    private long mSequence = -1;
+    private long mSegmentBase;
+    private long mOffset;
+
+    SQLiteQueueLogCheckpoint(File directory) throws IOException {
+        mRandomAccessFile = new RandomAccessFile(new File(directory, FILE_NAME), "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        for (int slot = 0; slot < 2; slot++) {
+            readSlot(slot);
+        }
+    }
+
+    private void readSlot(int slot) throws IOException {
+        long position = (long) slot * SLOT_SIZE;
+        if (mChannel.size() < position + RECORD_SIZE)
+            return;
+        mBuffer.clear();
+        while (mBuffer.hasRemaining()) {
+            if (mChannel.read(mBuffer, position + mBuffer.position()) < 0)
+                return;
+        }
+        mCrc.reset();
+        mCrc.update(mBuffer.array(), 0, RECORD_SIZE - 4);
+        if ((int) mCrc.getValue() != mBuffer.getInt(RECORD_SIZE - 4))
+            return;
+        long version = mBuffer.getLong(0);
+        if (version > mVersion) {
+            mVersion = version;
+            mSequence = mBuffer.getLong(8);
+            mSegmentBase = mBuffer.getLong(16);
+            mOffset = mBuffer.getLong(24);
+        }
+    }
+
+    /**
+     * Returns the sequence number of the head record, or -1 if no position was ever written.
+     */
+    long getSequence() {
+        return mSequence;
+    }
+
+    long getSegmentBase() {
+        return mSegmentBase;
+    }
+
+    long getOffset() {
+        return mOffset;
+    }
+
+    void write(long sequence, long segmentBase, long offset, boolean sync) throws IOException {
+        long version = mVersion + 1;
+        mBuffer.clear();
+        mBuffer.putLong(version).putLong(sequence).putLong(segmentBase).putLong(offset);
+        mCrc.reset();
+        mCrc.update(mBuffer.array(), 0, RECORD_SIZE - 4);
+        mBuffer.putInt((int) mCrc.getValue());
+        mBuffer.flip();
+        long position = (version % 2) * SLOT_SIZE;
+        while (mBuffer.hasRemaining()) {
+            mChannel.write(mBuffer, position + mBuffer.position());
+        }
+        if (sync)
+            mChannel.force(false);
+        mVersion = version;
+        mSequence = sequence;
+        mSegmentBase = segmentBase;
+        mOffset = offset;
+    }
+
+    void sync() throws IOException {
+        mChannel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mRandomAccessFile.close();
+    }
+}
@@ -0,0 +1,63 @@
+package com.talview.sqlitepersistentqueue.db;
+
+/**
+ * Tunes a {@link SQLiteQueueSegmentLog}: how large its segment files grow and whether appends
+ * are synced to disk.
+ * <p>
+ * {@code new SQLiteQueueLogConfig.Builder().build()} gives 16 MiB segments and leaves syncing to
+ * the operating system, which like {@code synchronous = NORMAL} survives a crash of the process
+ * but may lose the last appends on a power cut.
+ */
+public class SQLiteQueueLogConfig {
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public static final int MIN_SEGMENT_SIZE = 64;
+
+    private final int mSegmentSize;
+    private final boolean mSyncOnAppend;
+
+    private SQLiteQueueLogConfig(Builder builder) {
+        mSegmentSize = builder.mSegmentSize;
+        mSyncOnAppend = builder.mSyncOnAppend;
+    }
+
+    public int getSegmentSize() {
+        return mSegmentSize;
+    }
+
+    public boolean isSyncOnAppend() {
+        return mSyncOnAppend;
+    }
+
+    public static class Builder {
+        private int mSegmentSize = DEFAULT_SEGMENT_SIZE;
+        private boolean mSyncOnAppend;
+
+        /**
+         * The size in bytes past which appends move on to a new segment file. Segments are deleted
+         * whole once every record in them was polled, so smaller segments give disk space back
+         * sooner, at the cost of more files. A record larger than the segment size gets a segment
+         * of its own.
+         */
+        public Builder setSegmentSize(int segmentSize) {
+            if (segmentSize < MIN_SEGMENT_SIZE) {
+                throw new IllegalArgumentException("Segment size must be at least " + MIN_SEGMENT_SIZE +
+                        " bytes, was " + segmentSize);
+            }
+            mSegmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Syncs every append, and every move of the head, to disk before returning, so that they
+         * survive a power cut.
+         */
+        public Builder setSyncOnAppend(boolean syncOnAppend) {
+            mSyncOnAppend = syncOnAppend;
+            return this;
+        }
+
+        public SQLiteQueueLogConfig build() {
+            return new SQLiteQueueLogConfig(this);
+        }
+    }
+}
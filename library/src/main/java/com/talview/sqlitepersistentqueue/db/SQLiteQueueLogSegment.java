@@ -0,0 +1,193 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * One file of a {@link SQLiteQueueSegmentLog}, named after the sequence number of its first
+ * record. Records are stored back to back as a 4-byte length, the CRC32 of the payload and the
+ * payload itself.
+ */
+class SQLiteQueueLogSegment implements Closeable {
+    static final String SUFFIX = ".log";
+    static final int HEADER_SIZE = 8;
+
+    private final File mFile;
+    private final long mBaseSequence;
+    private final RandomAccessFile mRandomAccessFile;
+    private final FileChannel mChannel;
+    private long mSize;
+    private long mRecordCount;
+
+    private SQLiteQueueLogSegment(File file, long baseSequence) throws IOException {
+        mFile = file;
+        mBaseSequence = baseSequence;
+        mRandomAccessFile = new RandomAccessFile(file, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+    }
+
+    static SQLiteQueueLogSegment create(File directory, long baseSequence) throws IOException {
+        File file = new File(directory, String.format(Locale.US, "%020d", baseSequence) + SUFFIX);
+        SQLiteQueueLogSegment segment = new SQLiteQueueLogSegment(file, baseSequence);
+        segment.mChannel.truncate(0);
+        return segment;
+    }
+
+    /**
+     * Opens an existing segment. The last segment of a log is recovered: its records are checked
+     * and anything after the last complete one, left by a crash mid-append, is cut off. Earlier
+     * segments were complete when the log moved past them, so they are only measured.
+     *
+     * @param nextBaseSequence the base of the following segment, or -1 to recover this one.
+     */
+    static SQLiteQueueLogSegment open(File file, long baseSequence, long nextBaseSequence) throws IOException {
+        SQLiteQueueLogSegment segment = new SQLiteQueueLogSegment(file, baseSequence);
+        if (nextBaseSequence == -1) {
+            segment.recover();
+        } else {
+            segment.mSize = segment.mChannel.size();
+            segment.mRecordCount = nextBaseSequence - baseSequence;
+        }
+        return segment;
+    }
+
+    /**
+     * Returns the base sequence of a segment file, or -1 if the file is not a segment.
+     */
+    static long parseBaseSequence(File file) {
+        String name = file.getName();
+        if (!name.endsWith(SUFFIX))
+            return -1;
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    long getBaseSequence() {
+        return mBaseSequence;
+    }
+
+    /**
+     * Returns the sequence number the next appended record gets.
+     */
+    long getEndSequence() {
+        return mBaseSequence + mRecordCount;
+    }
+
+    long getSize() {
+        return mSize;
+    }
+
+    /**
+     * Appends {@code records[from, to)} in a single write.
+     */
+    void append(List<byte[]> records, int from, int to) throws IOException {
+        int length = 0;
+        for (int i = from; i < to; i++) {
+            length += HEADER_SIZE + records.get(i).length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        CRC32 crc = new CRC32();
+        for (int i = from; i < to; i++) {
+            byte[] record = records.get(i);
+            crc.reset();
+            crc.update(record, 0, record.length);
+            buffer.putInt(record.length).putInt((int) crc.getValue()).put(record);
+        }
+        buffer.flip();
+        long position = mSize;
+        while (buffer.hasRemaining()) {
+            position += mChannel.write(buffer, position);
+        }
+        mSize = position;
+        mRecordCount += to - from;
+    }
+
+    /**
+     * Reads the record starting at the given offset. It takes up {@link #HEADER_SIZE} plus its
+     * length in bytes.
+     */
+    byte[] read(long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, offset);
+        int length = header.getInt(0);
+        if (length < 0 || offset + HEADER_SIZE + length > mSize) {
+            throw new IOException("Corrupt record at " + offset + " in " + mFile);
+        }
+        ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(record, offset + HEADER_SIZE);
+        return record.array();
+    }
+
+    private void recover() throws IOException {
+        long fileSize = mChannel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        CRC32 crc = new CRC32();
+        long offset = 0;
+        long count = 0;
+        while (offset + HEADER_SIZE <= fileSize) {
+            header.clear();
+            readFully(header, offset, fileSize);
+            int length = header.getInt(0);
+            if (length < 0 || offset + HEADER_SIZE + length > fileSize)
+                break;
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(record, offset + HEADER_SIZE, fileSize);
+            crc.reset();
+            crc.update(record.array(), 0, length);
+            if ((int) crc.getValue() != header.getInt(4))
+                break;
+            offset += HEADER_SIZE + length;
+            count++;
+        }
+        if (offset < fileSize)
+            mChannel.truncate(offset);
+        mSize = offset;
+        mRecordCount = count;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        readFully(buffer, position, mSize);
+    }
+
+    private void readFully(ByteBuffer buffer, long position, long limit) throws IOException {
+        if (position + buffer.remaining() > limit) {
+            throw new EOFException("Read past the end of " + mFile);
+        }
+        while (buffer.hasRemaining()) {
+            int read = mChannel.read(buffer, position);
+            if (read < 0)
+                throw new EOFException("Read past the end of " + mFile);
+            position += read;
+        }
+    }
+
+    void sync() throws IOException {
+        mChannel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mRandomAccessFile.close();
+    }
+
+    /**
+     * Closes and deletes the segment file.
+     */
+    void delete() throws IOException {
+        close();
+        if (!mFile.delete() && mFile.exists()) {
+            throw new IOException("Failed to delete " + mFile);
+        }
+    }
+}
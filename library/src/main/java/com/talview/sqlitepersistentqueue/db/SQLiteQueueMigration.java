@@ -0,0 +1,38 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * A step that takes the queue database from {@code version - 1} to {@code version} without
+ * losing the items stored in it.
+ * <p>
+ * The schema change runs inside the upgrade transaction, so it must stay cheap: ALTER TABLE,
+ * CREATE INDEX and the like. Rewriting existing rows belongs in {@link #migrateData}, which is
+ * called in small chunks on a background thread once the database is open, and picks up where it
+ * left off after a restart.
+ */
+abstract class SQLiteQueueMigration {
+    final int version;
+
+    SQLiteQueueMigration(int version) {
+        this.version = version;
+    }
+
+    abstract void migrateSchema(SQLiteDatabase db);
+
+    /**
+     * Returns whether rows are still waiting for {@link #migrateData}.
+     */
+    boolean hasPendingData(SQLiteDatabase db) {
+        return false;
+    }
+
+    /**
+     * Rewrites at most {@code maxRows} of the rows still waiting for this migration.
+     *
+     * @return the number of rows rewritten, 0 once nothing is left.
+     */
+    int migrateData(SQLiteDatabase db, int maxRows) {
+        return 0;
+    }
+}
@@ -0,0 +1,107 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
+
+/**
+ * The ordered list of migrations applied by {@link SQLiteQueueDbHelper}. Add a new step at the end
+ * and bump the database version to match it.
+ */
+final class SQLiteQueueMigrations {
+    static final SQLiteQueueMigration[] ALL = {
+            new AddValueHash(),
+            new AddBlobTable(),
+            new AddInFlightTables()
+    };
+
+    private SQLiteQueueMigrations() {
+    }
+
+    /**
+     * Version 2: hash every value so lookups by value can use an index.
+     */
+    static class AddValueHash extends SQLiteQueueMigration {
+        private static final String SQL_ADD_VALUE_HASH =
+                "ALTER TABLE " + SQLiteQueueTable.TABLE_NAME +
+                        " ADD COLUMN " + SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + " INTEGER";
+        private static final String SELECTION_UNHASHED =
+                SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + " IS NULL AND " +
+                        SQLiteQueueTable.COLUMN_NAME_VALUE + " IS NOT NULL";
+
+        AddValueHash() {
+            super(2);
+        }
+
+        @Override
+        void migrateSchema(SQLiteDatabase db) {
+            db.execSQL(SQL_ADD_VALUE_HASH);
+            db.execSQL(SQLiteQueueDbHelper.SQL_CREATE_VALUE_HASH_INDEX);
+        }
+
+        @Override
+        boolean hasPendingData(SQLiteDatabase db) {
+            Cursor c = db.rawQuery("SELECT 1 FROM " + SQLiteQueueTable.TABLE_NAME
+                    + " WHERE " + SELECTION_UNHASHED + " LIMIT 1", null);
+            boolean pending = c.getCount() > 0;
+            c.close();
+            return pending;
+        }
+
+        @Override
+        int migrateData(SQLiteDatabase db, int maxRows) {
+            Cursor c = db.rawQuery("SELECT " + SQLiteQueueTable._ID + ","
+                    + SQLiteQueueTable.COLUMN_NAME_VALUE
+                    + " FROM " + SQLiteQueueTable.TABLE_NAME
+                    + " WHERE " + SELECTION_UNHASHED + " LIMIT " + maxRows, null);
+            SQLiteStatement update = db.compileStatement("UPDATE " + SQLiteQueueTable.TABLE_NAME
+                    + " SET " + SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + " = ?"
+                    + " WHERE " + SQLiteQueueTable._ID + " = ?");
+            int rewritten = 0;
+            try {
+                while (c.moveToNext()) {
+                    update.bindLong(1, SQLiteQueueHash.hash(c.getString(1)));
+                    update.bindLong(2, c.getLong(0));
+                    update.execute();
+                    rewritten++;
+                }
+            } finally {
+                update.close();
+                c.close();
+            }
+            return rewritten;
+        }
+    }
+
+    /**
+     * Version 3: a second queue table storing values as BLOB, for binary converters.
+     */
+    static class AddBlobTable extends SQLiteQueueMigration {
+        AddBlobTable() {
+            super(3);
+        }
+
+        @Override
+        void migrateSchema(SQLiteDatabase db) {
+            db.execSQL(SQLiteQueueDbHelper.SQL_CREATE_BLOB_ENTRIES);
+            db.execSQL(SQLiteQueueDbHelper.SQL_CREATE_BLOB_VALUE_HASH_INDEX);
+        }
+    }
+
+    /**
+     * Version 4: tables holding the leased rows of the text and blob queue tables.
+     */
+    static class AddInFlightTables extends SQLiteQueueMigration {
+        AddInFlightTables() {
+            super(4);
+        }
+
+        @Override
+        void migrateSchema(SQLiteDatabase db) {
+            SQLiteQueueDbHelper.createInFlightTable(db, SQLiteQueueTable.TABLE_NAME, false, null);
+            SQLiteQueueDbHelper.createInFlightTable(db, SQLiteQueueTable.BLOB_TABLE_NAME, true, null);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The SQL that creates queue tables, shared by {@link SQLiteQueueDbHelper} and any other
+ * {@link SQLiteQueueStorage}.
+ */
+public final class SQLiteQueueSchema {
+    static final String TEXT_TYPE = " TEXT";
+    static final String INTEGER_TYPE = " INTEGER";
+    static final String BLOB_TYPE = " BLOB";
+    private static final String COMMA_SEP = ",";
+
+    private SQLiteQueueSchema() {
+    }
+
+    /**
+     * Creates a queue table with the given name, along with its value hash index and in-flight
+     * table, unless it already exists.
+     *
+     * @param blobValues whether the table stores its values as BLOB rather than TEXT.
+     */
+    public static void createQueueTable(SQLiteQueueStorage storage, String tableName, boolean blobValues) {
+        createQueueTable(storage, tableName, blobValues, null);
+    }
+
+    /**
+     * Like {@link #createQueueTable(SQLiteQueueStorage, String, boolean)}, adding an integer
+     * order column and an index on it and the id.
+     *
+     * @param orderColumn the order column, or null for a plain FIFO table.
+     */
+    public static void createQueueTable(SQLiteQueueStorage storage, String tableName, boolean blobValues,
+                                        String orderColumn) {
+        for (String sql : sqlCreateQueueTable(tableName, blobValues, orderColumn)) {
+            storage.execSQL(sql);
+        }
+    }
+
+    /**
+     * Returns the statements creating a queue table, its indexes and its in-flight table.
+     */
+    static List<String> sqlCreateQueueTable(String tableName, boolean blobValues, String orderColumn) {
+        List<String> statements = new ArrayList<>(5);
+        statements.add(sqlCreateTable(tableName, blobValues ? BLOB_TYPE : TEXT_TYPE, orderColumn));
+        statements.add(sqlCreateValueHashIndex(tableName + "_" + SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + "_idx",
+                tableName));
+        if (orderColumn != null) {
+            statements.add("CREATE INDEX IF NOT EXISTS " + tableName + "_" + orderColumn + "_idx ON " +
+                    tableName + " (" + orderColumn + COMMA_SEP + SQLiteQueueTable._ID + ")");
+        }
+        statements.addAll(sqlCreateInFlightTable(tableName, blobValues, orderColumn));
+        return statements;
+    }
+
+    /**
+     * Returns the statements creating the table holding the leased rows of a queue table. Its
+     * rows keep the id, value and order key they had in the queue table, so a row whose lease is
+     * given back returns to its old place in the queue.
+     */
+    static List<String> sqlCreateInFlightTable(String tableName, boolean blobValues, String orderColumn) {
+        String inFlightTableName = tableName + SQLiteQueueTable.IN_FLIGHT_TABLE_SUFFIX;
+        List<String> statements = new ArrayList<>(2);
+        statements.add("CREATE TABLE IF NOT EXISTS " + inFlightTableName + " (" +
+                SQLiteQueueTable._ID + " INTEGER PRIMARY KEY NOT NULL" + COMMA_SEP +
+                SQLiteQueueTable.COLUMN_NAME_VALUE + (blobValues ? BLOB_TYPE : TEXT_TYPE) + COMMA_SEP +
+                SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + INTEGER_TYPE + COMMA_SEP +
+                (orderColumn == null ? "" : orderColumn + INTEGER_TYPE + " NOT NULL DEFAULT 0" + COMMA_SEP) +
+                SQLiteQueueTable.COLUMN_NAME_LEASE_EXPIRES_AT + INTEGER_TYPE + " NOT NULL" + COMMA_SEP +
+                SQLiteQueueTable.COLUMN_NAME_LEASE_TOKEN + INTEGER_TYPE + " NOT NULL )");
+        statements.add("CREATE INDEX IF NOT EXISTS " + inFlightTableName + "_" +
+                SQLiteQueueTable.COLUMN_NAME_LEASE_EXPIRES_AT + "_idx ON " + inFlightTableName +
+                " (" + SQLiteQueueTable.COLUMN_NAME_LEASE_EXPIRES_AT + ")");
+        return statements;
+    }
+
+    static String sqlCreateTable(String tableName, String valueType, String orderColumn) {
+        return "CREATE TABLE IF NOT EXISTS " + tableName + " (" +
+                SQLiteQueueTable._ID + " INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL" + COMMA_SEP +
+                SQLiteQueueTable.COLUMN_NAME_VALUE + valueType + COMMA_SEP +
+                SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + INTEGER_TYPE +
+                (orderColumn == null ? "" : COMMA_SEP + orderColumn + INTEGER_TYPE + " NOT NULL DEFAULT 0") +
+                " )";
+    }
+
+    static String sqlCreateValueHashIndex(String indexName, String tableName) {
+        return "CREATE INDEX IF NOT EXISTS " + indexName +
+                " ON " + tableName + " (" + SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + ")";
+    }
+}
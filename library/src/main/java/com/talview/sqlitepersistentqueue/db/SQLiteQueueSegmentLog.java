@@ -0,0 +1,350 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * An append-only log of byte records, kept as a directory of segment files, for queues whose
+ * enqueue rate outruns one row insert per element.
+ * <p>
+ * Appending writes length-prefixed, checksummed records to the end of the newest segment, rolling
+ * over to a new one once it reaches {@link SQLiteQueueLogConfig#getSegmentSize()}. Polling reads
+ * the record at the head and moves the head past it; the head position lives in a small
+ * checkpoint file rather than in the segments, so nothing is rewritten. Once the head leaves a
+ * segment behind, the whole file is deleted.
+ * <p>
+ * On open, the newest segment is scanned and any record torn by a crash is cut off. Without
+ * {@link SQLiteQueueLogConfig.Builder#setSyncOnAppend(boolean)} a crash of the device, rather than
+ * the process, may lose the last appends or replay the last polls.
+ * <p>
+ * All methods are synchronized. A directory must only be opened by one log at a time.
+ */
+public class SQLiteQueueSegmentLog implements Closeable {
+    private final File mDirectory;
+    private final SQLiteQueueLogConfig mConfig;
+    private final TreeMap<Long, SQLiteQueueLogSegment> mSegments = new TreeMap<>();
+    private final SQLiteQueueLogCheckpoint mCheckpoint;
+    private SQLiteQueueLogSegment mHeadSegment;
+    private SQLiteQueueLogSegment mTailSegment;
+    private long mHeadSequence;
+    private long mHeadOffset;
+    private boolean mClosed;
+
+    /**
+     * Opens the log in the given directory, creating the directory if needed.
+     */
+    public SQLiteQueueSegmentLog(File directory, SQLiteQueueLogConfig config) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+        mDirectory = directory;
+        mConfig = config;
+        mCheckpoint = new SQLiteQueueLogCheckpoint(directory);
+        try {
+            recover();
+        } catch (IOException e) {
+            closeQuietly();
+            throw e;
+        }
+    }
+
+    private void recover() throws IOException {
+        TreeMap<Long, File> files = new TreeMap<>();
+        File[] listed = mDirectory.listFiles();
+        if (listed != null) {
+            for (File file : listed) {
+                long base = SQLiteQueueLogSegment.parseBaseSequence(file);
+                if (base >= 0)
+                    files.put(base, file);
+            }
+        }
+        for (Map.Entry<Long, File> entry : files.entrySet()) {
+            Long next = files.higherKey(entry.getKey());
+            mSegments.put(entry.getKey(), SQLiteQueueLogSegment.open(entry.getValue(), entry.getKey(),
+                    next == null ? -1 : next));
+        }
+        long checkpointSequence = mCheckpoint.getSequence();
+        if (mSegments.isEmpty()) {
+            long base = Math.max(checkpointSequence, 0);
+            mSegments.put(base, SQLiteQueueLogSegment.create(mDirectory, base));
+        }
+        mTailSegment = mSegments.lastEntry().getValue();
+
+        SQLiteQueueLogSegment head = checkpointSequence == -1 ? null : mSegments.get(mCheckpoint.getSegmentBase());
+        if (head == null) {
+            // No checkpoint yet, or its segment is gone: start at the first record not yet polled.
+            Map.Entry<Long, SQLiteQueueLogSegment> floor = mSegments.floorEntry(Math.max(checkpointSequence, 0));
+            head = floor == null ? mSegments.firstEntry().getValue() : floor.getValue();
+            mHeadSegment = head;
+            mHeadSequence = head.getBaseSequence();
+            mHeadOffset = 0;
+            while (mHeadSequence < checkpointSequence && mHeadSequence < head.getEndSequence()) {
+                mHeadOffset += SQLiteQueueLogSegment.HEADER_SIZE + head.read(mHeadOffset).length;
+                mHeadSequence++;
+            }
+        } else if (mCheckpoint.getOffset() > head.getSize()) {
+            // The records the checkpoint had moved past were lost with a torn tail.
+            mHeadSegment = head;
+            mHeadSequence = head.getEndSequence();
+            mHeadOffset = head.getSize();
+        } else {
+            mHeadSegment = head;
+            mHeadSequence = checkpointSequence;
+            mHeadOffset = mCheckpoint.getOffset();
+        }
+        // Segments the head already left, whose deletion a crash interrupted.
+        while (mSegments.firstKey() < mHeadSegment.getBaseSequence()) {
+            mSegments.pollFirstEntry().getValue().delete();
+        }
+        skipConsumedSegments();
+    }
+
+    /**
+     * Returns the number of records between the head and the tail.
+     */
+    public synchronized long size() {
+        return mTailSegment.getEndSequence() - mHeadSequence;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the total size in bytes of the segment files, including records already polled from
+     * the head segment.
+     */
+    public synchronized long getDiskSize() {
+        long size = 0;
+        for (SQLiteQueueLogSegment segment : mSegments.values()) {
+            size += segment.getSize();
+        }
+        return size;
+    }
+
+    public synchronized void append(byte[] record) throws IOException {
+        appendAll(Collections.singletonList(record));
+    }
+
+    /**
+     * Appends the records in order, in as few writes as the segment size allows.
+     */
+    public synchronized void appendAll(List<byte[]> records) throws IOException {
+        checkOpen();
+        int segmentSize = mConfig.getSegmentSize();
+        int from = 0;
+        while (from < records.size()) {
+            if (mTailSegment.getSize() >= segmentSize)
+                roll();
+            long size = mTailSegment.getSize();
+            int to = from;
+            do {
+                size += SQLiteQueueLogSegment.HEADER_SIZE + records.get(to).length;
+                to++;
+            } while (to < records.size() &&
+                    size + SQLiteQueueLogSegment.HEADER_SIZE + records.get(to).length <= segmentSize);
+            mTailSegment.append(records, from, to);
+            from = to;
+        }
+        if (mConfig.isSyncOnAppend())
+            mTailSegment.sync();
+    }
+
+    private void roll() throws IOException {
+        if (mConfig.isSyncOnAppend())
+            mTailSegment.sync();
+        long base = mTailSegment.getEndSequence();
+        mTailSegment = SQLiteQueueLogSegment.create(mDirectory, base);
+        mSegments.put(base, mTailSegment);
+        skipConsumedSegments();
+    }
+
+    /**
+     * Returns the record at the head without removing it, or null if the log is empty.
+     */
+    public synchronized byte[] peek() throws IOException {
+        checkOpen();
+        if (isEmpty())
+            return null;
+        return mHeadSegment.read(mHeadOffset);
+    }
+
+    /**
+     * Removes and returns the record at the head, or null if the log is empty.
+     */
+    public synchronized byte[] poll() throws IOException {
+        checkOpen();
+        if (isEmpty())
+            return null;
+        byte[] record = mHeadSegment.read(mHeadOffset);
+        advance(record);
+        commitHead();
+        return record;
+    }
+
+    /**
+     * Removes and returns up to {@code maxRecords} records from the head, moving the checkpoint
+     * once for all of them.
+     */
+    public synchronized List<byte[]> poll(int maxRecords) throws IOException {
+        checkOpen();
+        int count = (int) Math.min(size(), maxRecords);
+        if (count <= 0)
+            return Collections.emptyList();
+        List<byte[]> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] record = mHeadSegment.read(mHeadOffset);
+            records.add(record);
+            advance(record);
+        }
+        commitHead();
+        return records;
+    }
+
+    /**
+     * Removes every record, deleting all but a fresh, empty segment.
+     */
+    public synchronized void clear() throws IOException {
+        checkOpen();
+        mHeadSegment = mTailSegment;
+        mHeadSequence = mTailSegment.getEndSequence();
+        mHeadOffset = mTailSegment.getSize();
+        if (mHeadOffset == 0)
+            commitHead();
+        else
+            roll();
+    }
+
+    /**
+     * Forces appended records and the head position to disk.
+     */
+    public synchronized void sync() throws IOException {
+        checkOpen();
+        mTailSegment.sync();
+        mCheckpoint.sync();
+    }
+
+    /**
+     * Returns an iterator over the records from head to tail. It is weakly consistent: it sees
+     * records appended while iterating and skips records polled meanwhile.
+     */
+    public Iterator<byte[]> iterator() {
+        return new LogIterator();
+    }
+
+    private void advance(byte[] record) {
+        mHeadOffset += SQLiteQueueLogSegment.HEADER_SIZE + record.length;
+        mHeadSequence++;
+        if (mHeadSequence == mHeadSegment.getEndSequence() && mHeadSegment != mTailSegment) {
+            mHeadSegment = mSegments.higherEntry(mHeadSegment.getBaseSequence()).getValue();
+            mHeadOffset = 0;
+        }
+    }
+
+    /**
+     * Writes the head to the checkpoint, then deletes the segments it left behind, so that a crash
+     * in between leaves files that the next open deletes rather than a checkpoint pointing nowhere.
+     */
+    private void commitHead() throws IOException {
+        mCheckpoint.write(mHeadSequence, mHeadSegment.getBaseSequence(), mHeadOffset, mConfig.isSyncOnAppend());
+        while (mSegments.firstKey() < mHeadSegment.getBaseSequence()) {
+            mSegments.pollFirstEntry().getValue().delete();
+        }
+    }
+
+    /**
+     * Moves a head sitting at the end of a finished segment to the start of the next one.
+     */
+    private void skipConsumedSegments() throws IOException {
+        if (mHeadSequence == mHeadSegment.getEndSequence() && mHeadSegment != mTailSegment) {
+            mHeadSegment = mSegments.higherEntry(mHeadSegment.getBaseSequence()).getValue();
+            mHeadOffset = 0;
+            commitHead();
+        }
+    }
+
+    private void checkOpen() {
+        if (mClosed) {
+            throw new IllegalStateException("Log is closed");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (mClosed)
+            return;
+        mClosed = true;
+        closeQuietly();
+    }
+
+    private void closeQuietly() throws IOException {
+        IOException failure = null;
+        for (SQLiteQueueLogSegment segment : mSegments.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        mCheckpoint.close();
+        if (failure != null)
+            throw failure;
+    }
+
+    private class LogIterator implements Iterator<byte[]> {
+        private long mSequence = -1;
+        private long mSegmentBase;
+        private long mOffset;
+
+        @Override
+        public boolean hasNext() {
+            synchronized (SQLiteQueueSegmentLog.this) {
+                return Math.max(mSequence, mHeadSequence) < mTailSegment.getEndSequence();
+            }
+        }
+
+        @Override
+        public byte[] next() {
+            synchronized (SQLiteQueueSegmentLog.this) {
+                checkOpen();
+                if (mSequence < mHeadSequence) {
+                    mSequence = mHeadSequence;
+                    mSegmentBase = mHeadSegment.getBaseSequence();
+                    mOffset = mHeadOffset;
+                }
+                if (mSequence >= mTailSegment.getEndSequence())
+                    throw new NoSuchElementException();
+                SQLiteQueueLogSegment segment = mSegments.get(mSegmentBase);
+                if (segment == null)
+                    throw new ConcurrentModificationException();
+                if (mSequence == segment.getEndSequence()) {
+                    segment = mSegments.higherEntry(mSegmentBase).getValue();
+                    mSegmentBase = segment.getBaseSequence();
+                    mOffset = 0;
+                }
+                try {
+                    byte[] record = segment.read(mOffset);
+                    mOffset += SQLiteQueueLogSegment.HEADER_SIZE + record.length;
+                    mSequence++;
+                    return record;
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to read the queue log", e);
+                }
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
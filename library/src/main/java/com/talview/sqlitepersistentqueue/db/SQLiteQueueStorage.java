@@ -0,0 +1,81 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import java.io.Closeable;
+import java.util.List;
+
+/**
+ * The statements a {@link SQLiteQueueTableManager} runs against its SQLite database, so the queue
+ * is not tied to the Android database classes. {@link SQLiteQueueAndroidStorage} runs them on an
+ * {@code android.database.sqlite.SQLiteDatabase}, {@link SQLiteQueueJdbcStorage} on a JDBC
+ * connection, which lets the queue run and be measured on a plain JVM.
+ * <p>
+ * Bind arguments may be null, integral numbers, strings or byte arrays. Transactions nest the way
+ * they do on Android: the outermost {@link #endTransaction()} commits only if every level called
+ * {@link #setTransactionSuccessful()}, and a transaction belongs to the thread that began it.
+ */
+public interface SQLiteQueueStorage extends Closeable {
+
+    /**
+     * Runs a statement that returns no rows.
+     */
+    void execSQL(String sql, Object... bindArgs);
+
+    /**
+     * Runs an INSERT and returns the id of the new row, or -1 if it could not be inserted.
+     */
+    long executeInsert(String sql, Object... bindArgs);
+
+    /**
+     * Runs an UPDATE or DELETE and returns the number of rows it changed.
+     */
+    int executeUpdateDelete(String sql, Object... bindArgs);
+
+    /**
+     * Returns the first column of the first row of the query, 0 if it is NULL, or
+     * {@code defaultValue} if the query returns no rows.
+     */
+    long queryForLong(String sql, long defaultValue, Object... bindArgs);
+
+    /**
+     * Runs a query whose first column is the row id and whose second one is the value, read as
+     * bytes if {@code blobValues} and as a string otherwise.
+     */
+    List<SQLiteQueueEntry> queryEntries(String sql, boolean blobValues, Object... bindArgs);
+
+    /**
+     * Compiles an INSERT to run many times with different arguments.
+     */
+    Statement compileStatement(String sql);
+
+    void beginTransaction();
+
+    void setTransactionSuccessful();
+
+    void endTransaction();
+
+    @Override
+    void close();
+
+    /**
+     * A compiled INSERT. Bindings stay in place until they are replaced.
+     */
+    interface Statement extends Closeable {
+        void bindNull(int index);
+
+        void bindLong(int index, long value);
+
+        void bindString(int index, String value);
+
+        void bindBlob(int index, byte[] value);
+
+        /**
+         * Runs the statement and returns the id of the new row.
+         *
+         * @throws RuntimeException if the row could not be inserted.
+         */
+        long executeInsert();
+
+        @Override
+        void close();
+    }
+}
@@ -1,40 +1,320 @@
 package com.talview.sqlitepersistentqueue.db;
 
-import android.content.ContentValues;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A class that wraps all the db querying code.
+ * <p>
+ * A manager works on one queue table. Text tables store values as TEXT and are used through the
+ * {@code String} methods, blob tables store values as BLOB and are used through the
+ * {@code byte[]} methods. The entry methods work with both.
+ * <p>
+ * Rows leave the table in id order, unless the table has an order column such as
+ * {@link SQLiteQueueTable#COLUMN_NAME_PRIORITY}. Then the head is the row with the lowest order key,
+ * ties broken by id, read through the table's {@code (key, _id)} index.
+ * <p>
+ * Every statement goes through a {@link SQLiteQueueStorage}, an Android database unless the
+ * manager is given another one.
  */
 public class SQLiteQueueTableManager implements Closeable {
-    private final SQLiteDatabase mDb;
+    private static final String COMMA_SEP = ",";
+    /**
+     * Matches rows by value hash first, so SQLite can use the hash index and only compare the
+     * values of the rows whose hash is equal. Rows stored before the hash column existed have no
+     * hash until the background migration reaches them, so those are checked as well.
+     */
+    private static final String SELECTION_VALUE =
+            "(" + SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + " = ? OR " +
+                    SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + " IS NULL) AND " +
+                    SQLiteQueueTable.COLUMN_NAME_VALUE + " = ?";
+    private static final String SELECTION_ID = SQLiteQueueTable._ID + " = ?";
+    private static final String SELECTION_LEASE = SQLiteQueueTable._ID + " = ? AND " +
+            SQLiteQueueTable.COLUMN_NAME_LEASE_TOKEN + " = ?";
+    private final SQLiteQueueStorage mDb;
+    private final String mTableName;
+    private final boolean mBlobValues;
+    private final String mOrderColumn;
+    private final String mSqlInsert;
+    private final String mSqlInsertOrdered;
+    private final String mSqlHeadOrder;
+    private final String mInFlightTableName;
+    /**
+     * The columns a row keeps when it moves between the queue table and the in-flight table.
+     */
+    private final String mRowColumns;
+    private final String mSqlSelectEntries;
+    private final String mSqlDelete;
+    /**
+     * Number of rows in the queue table, seeded once on open and kept in step with every
+     * insert and delete made through this manager.
+     */
+    private final AtomicInteger mCount;
+    private final AtomicBoolean mClosed = new AtomicBoolean();
 
     public SQLiteQueueTableManager(SQLiteQueueDbHelper queueDbHelper) {
-        this.mDb = queueDbHelper.getWritableDatabase();
+        this(queueDbHelper, SQLiteQueueTable.TABLE_NAME, false);
+    }
+
+    /**
+     * Creates a manager for the given table of the queue database.
+     *
+     * @param blobValues whether the table stores its values as BLOB rather than TEXT.
+     */
+    public SQLiteQueueTableManager(SQLiteQueueDbHelper queueDbHelper, String tableName, boolean blobValues) {
+        this(queueDbHelper, tableName, blobValues, null);
+    }
+
+    /**
+     * Creates a manager for a table whose rows are dequeued by the given order column.
+     *
+     * @param orderColumn the order column, or null to dequeue in id order.
+     * @see SQLiteQueueDbHelper#createQueueTable(SQLiteDatabase, String, boolean, String)
+     */
+    public SQLiteQueueTableManager(SQLiteQueueDbHelper queueDbHelper, String tableName, boolean blobValues,
+                                   String orderColumn) {
+        this(new SQLiteQueueAndroidStorage(queueDbHelper.getWritableDatabase()), tableName, blobValues,
+                orderColumn);
+    }
+
+    /**
+     * Creates a manager for a table of a database that other managers use as well. The manager
+     * acquires a reference on the database, and {@link #close()} releases it, so the connection
+     * stays open until its last user closes it.
+     *
+     * @param blobValues whether the table stores its values as BLOB rather than TEXT.
+     */
+    public SQLiteQueueTableManager(SQLiteDatabase db, String tableName, boolean blobValues) {
+        this(db, tableName, blobValues, null);
+    }
+
+    /**
+     * The shared database counterpart of
+     * {@link #SQLiteQueueTableManager(SQLiteQueueDbHelper, String, boolean, String)}.
+     */
+    public SQLiteQueueTableManager(SQLiteDatabase db, String tableName, boolean blobValues, String orderColumn) {
+        this(new SQLiteQueueAndroidStorage(acquireReference(db)), tableName, blobValues, orderColumn);
+    }
+
+    /**
+     * Creates a manager for a table reached through the given storage, which it closes on
+     * {@link #close()}. The table must exist already.
+     *
+     * @param blobValues whether the table stores its values as BLOB rather than TEXT.
+     * @see SQLiteQueueSchema#createQueueTable(SQLiteQueueStorage, String, boolean)
+     */
+    public SQLiteQueueTableManager(SQLiteQueueStorage storage, String tableName, boolean blobValues) {
+        this(storage, tableName, blobValues, null);
+    }
+
+    /**
+     * The storage counterpart of
+     * {@link #SQLiteQueueTableManager(SQLiteQueueDbHelper, String, boolean, String)}.
+     */
+    public SQLiteQueueTableManager(SQLiteQueueStorage storage, String tableName, boolean blobValues,
+                                   String orderColumn) {
+        this.mDb = storage;
+        this.mTableName = tableName;
+        this.mBlobValues = blobValues;
+        this.mOrderColumn = orderColumn;
+        this.mSqlInsert = "INSERT INTO " + tableName +
+                " (" + SQLiteQueueTable.COLUMN_NAME_VALUE + COMMA_SEP +
+                SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + ") VALUES (?, ?)";
+        this.mSqlInsertOrdered = orderColumn == null ? null : "INSERT INTO " + tableName +
+                " (" + SQLiteQueueTable.COLUMN_NAME_VALUE + COMMA_SEP +
+                SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + COMMA_SEP +
+                orderColumn + ") VALUES (?, ?, ?)";
+        this.mInFlightTableName = tableName + SQLiteQueueTable.IN_FLIGHT_TABLE_SUFFIX;
+        this.mRowColumns = SQLiteQueueTable._ID + COMMA_SEP + SQLiteQueueTable.COLUMN_NAME_VALUE + COMMA_SEP +
+                SQLiteQueueTable.COLUMN_NAME_VALUE_HASH + (orderColumn == null ? "" : COMMA_SEP + orderColumn);
+        this.mSqlHeadOrder = " ORDER BY " + (orderColumn == null ? "" : orderColumn + COMMA_SEP) +
+                SQLiteQueueTable._ID;
+        this.mSqlSelectEntries = "SELECT " + SQLiteQueueTable._ID + COMMA_SEP +
+                SQLiteQueueTable.COLUMN_NAME_VALUE + " FROM " + tableName;
+        this.mSqlDelete = "DELETE FROM " + tableName + " WHERE ";
+        this.mCount = new AtomicInteger(countRows());
+    }
+
+    private static SQLiteDatabase acquireReference(SQLiteDatabase db) {
+        db.acquireReference();
+        return db;
+    }
+
+    public String getTableName() {
+        return mTableName;
+    }
+
+    public boolean isBlobValues() {
+        return mBlobValues;
+    }
+
+    /**
+     * Returns the column rows are dequeued by, or null if they are dequeued in id order.
+     */
+    public String getOrderColumn() {
+        return mOrderColumn;
     }
 
     public long insert(String value) {
-        ContentValues cv = new ContentValues();
-        cv.put(SQLiteQueueTable.COLUMN_NAME_VALUE, value);
-        return mDb.insert(SQLiteQueueTable.TABLE_NAME, null, cv);
+        return insertRow(mDb.executeInsert(mSqlInsert, value, value == null ? null : SQLiteQueueHash.hash(value)));
+    }
+
+    public long insertBytes(byte[] value) {
+        return insertRow(mDb.executeInsert(mSqlInsert, value, value == null ? null : SQLiteQueueHash.hash(value)));
+    }
+
+    /**
+     * Inserts a value with the given order key. Rows inserted without one get a key of 0.
+     *
+     * @throws IllegalStateException if the table has no order column.
+     */
+    public long insert(String value, long orderKey) {
+        checkOrderColumn();
+        return insertRow(mDb.executeInsert(mSqlInsertOrdered, value,
+                value == null ? null : SQLiteQueueHash.hash(value), orderKey));
+    }
+
+    /**
+     * The binary counterpart of {@link #insert(String, long)}.
+     */
+    public long insertBytes(byte[] value, long orderKey) {
+        checkOrderColumn();
+        return insertRow(mDb.executeInsert(mSqlInsertOrdered, value,
+                value == null ? null : SQLiteQueueHash.hash(value), orderKey));
     }
 
+    private String checkOrderColumn() {
+        if (mOrderColumn == null) {
+            throw new IllegalStateException("Table " + mTableName + " has no order column");
+        }
+        return mOrderColumn;
+    }
+
+    private long insertRow(long rowId) {
+        if (rowId != -1)
+            mCount.incrementAndGet();
+        return rowId;
+    }
+
+    /**
+     * Inserts all the values in order through one compiled statement, committing once every
+     * {@code batchSize} rows instead of once per row.
+     *
+     * @return the number of values inserted, which is all of them.
+     * @throws SQLiteQueueInsertException if a row fails to insert. The batch it belongs to is
+     *                                    rolled back and only the rows committed by earlier
+     *                                    batches stay.
+     */
+    public int insertAll(List<String> values, int batchSize) {
+        return insertRows(values, null, batchSize);
+    }
+
+    /**
+     * Like {@link #insertAll(List, int)}, storing {@code orderKeys[i]} as the order key of the
+     * i-th value.
+     *
+     * @throws IllegalStateException if the table has no order column.
+     */
+    public int insertAll(List<String> values, long[] orderKeys, int batchSize) {
+        checkOrderColumn();
+        return insertRows(values, orderKeys, batchSize);
+    }
+
+    /**
+     * The binary counterpart of {@link #insertAll(List, int)}.
+     */
+    public int insertAllBytes(List<byte[]> values, int batchSize) {
+        return insertRows(values, null, batchSize);
+    }
+
+    /**
+     * The binary counterpart of {@link #insertAll(List, long[], int)}.
+     */
+    public int insertAllBytes(List<byte[]> values, long[] orderKeys, int batchSize) {
+        checkOrderColumn();
+        return insertRows(values, orderKeys, batchSize);
+    }
+
+    private int insertRows(List<?> values, long[] orderKeys, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1, was " + batchSize);
+        }
+        if (orderKeys != null && orderKeys.length != values.size()) {
+            throw new IllegalArgumentException("Expected " + values.size() + " order keys, got " +
+                    orderKeys.length);
+        }
+        SQLiteQueueStorage.Statement statement = mDb.compileStatement(orderKeys == null ? mSqlInsert : mSqlInsertOrdered);
+        int inserted = 0;
+        try {
+            while (inserted < values.size()) {
+                int batchEnd = Math.min(inserted + batchSize, values.size());
+                mDb.beginTransaction();
+                try {
+                    for (int i = inserted; i < batchEnd; i++) {
+                        bindValueAndHash(statement, 1, values.get(i));
+                        if (orderKeys != null)
+                            statement.bindLong(3, orderKeys[i]);
+                        try {
+                            statement.executeInsert();
+                        } catch (RuntimeException e) {
+                            // Ending the transaction without marking it successful rolls back
+                            // this batch; the ones committed before it stay.
+                            throw new SQLiteQueueInsertException("Failed to insert value " + i + " of " +
+                                    values.size(), inserted, e);
+                        }
+                    }
+                    mDb.setTransactionSuccessful();
+                } finally {
+                    mDb.endTransaction();
+                }
+                mCount.addAndGet(batchEnd - inserted);
+                inserted = batchEnd;
+            }
+        } finally {
+            statement.close();
+        }
+        return inserted;
+    }
+
+    /**
+     * Deletes every row, leased ones included.
+     *
+     * @return the number of rows deleted from the queue, not counting leased ones.
+     */
     public int clear() {
-        return mDb.delete(SQLiteQueueTable.TABLE_NAME, "1", null);
+        int deleted;
+        mDb.beginTransaction();
+        try {
+            deleted = mDb.executeUpdateDelete("DELETE FROM " + mTableName);
+            mDb.executeUpdateDelete("DELETE FROM " + mInFlightTableName);
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+        mCount.set(0);
+        return deleted;
     }
 
+    /**
+     * Returns the number of items in the queue without touching the database.
+     * <p>
+     * The count only tracks changes made through this manager, so two managers writing to the
+     * same table will each report their own view of it.
+     */
     public int getCount() {
-        Cursor c = mDb.query(SQLiteQueueTable.TABLE_NAME, new String[]{SQLiteQueueTable._ID},
-                "1", null, null, null, null);
-        int count = c.getCount();
-        c.close();
-        return count;
+        return mCount.get();
+    }
+
+    private int countRows() {
+        return (int) mDb.queryForLong("SELECT COUNT(*) FROM " + mTableName, 0);
     }
 
 //    public String getNext(long fromThis) {
@@ -57,122 +337,336 @@ public class SQLiteQueueTableManager implements Closeable {
 //    }
 
     public String get(long id) {
-        String[] projection = {
-                SQLiteQueueTable.COLUMN_NAME_VALUE
-        };
-        String selection = SQLiteQueueTable._ID + " = ?";
-        String[] selectionArgs = {
-                String.valueOf(id)
-        };
-        Cursor c = mDb.query(SQLiteQueueTable.TABLE_NAME, projection,
-                selection, selectionArgs, null, null, null);
-        c.moveToFirst();
-        if (c.getCount() == 0) {
-            c.close();
-            return null;
-        }
-        String value = c.getString(0);
-        c.close();
-        return value;
+        List<SQLiteQueueEntry> entries = mDb.queryEntries(mSqlSelectEntries + " WHERE " + SELECTION_ID,
+                false, id);
+        return entries.isEmpty() ? null : entries.get(0).getValue();
+    }
+
+    /**
+     * Returns up to {@code limit} rows whose id is greater than {@code afterId}, in ascending id
+     * order. Passing the id of the last row returned walks the table one page at a time.
+     */
+    public List<SQLiteQueueEntry> getEntries(long afterId, int limit) {
+        String sql = mSqlSelectEntries
+                + " WHERE " + SQLiteQueueTable._ID + " > ?"
+                + " ORDER BY " + SQLiteQueueTable._ID + " LIMIT " + limit;
+        return mDb.queryEntries(sql, mBlobValues, afterId);
     }
 
     public String getHead() {
-        if (getCount() == 0)
-            return null;
-        long minId = getMinId();
-        return get(minId);
+        SQLiteQueueEntry head = getHeadEntry();
+        return head == null ? null : head.getValue();
+    }
+
+    /**
+     * Returns the head row without removing it, or null if the queue is empty.
+     */
+    public SQLiteQueueEntry getHeadEntry() {
+        List<SQLiteQueueEntry> head = getHeadEntries(1);
+        return head.isEmpty() ? null : head.get(0);
+    }
+
+    /**
+     * Returns up to {@code limit} rows from the head of the queue without removing them, in queue
+     * order.
+     */
+    public List<SQLiteQueueEntry> getHeadEntries(int limit) {
+        return mDb.queryEntries(headQuery(limit), mBlobValues);
     }
 
     public long getNextId(long fromThis) {
         String sql = "SELECT MIN(" + SQLiteQueueTable._ID + ")"
-                + " FROM " + SQLiteQueueTable.TABLE_NAME + " WHERE " +
+                + " FROM " + mTableName + " WHERE " +
                 SQLiteQueueTable._ID + " > " + fromThis;
-        Cursor c = mDb.rawQuery(sql, null);
-        c.moveToFirst();
-        long nearestId = c.getLong(0);
-        c.close();
-        return nearestId;
+        return mDb.queryForLong(sql, 0);
     }
 
     public boolean contains(String value) {
-        String[] columns = {
-                SQLiteQueueTable.COLUMN_NAME_VALUE,
-        };
-        String selection = SQLiteQueueTable.COLUMN_NAME_VALUE + " = ?";
-        String[] selectionArgs = {
-                value
-        };
-        Cursor c = mDb.query(SQLiteQueueTable.TABLE_NAME,
-                columns, selection, selectionArgs, null, null, null);
-        boolean contains = c.getCount() > 0;
-        c.close();
-        return contains;
+        return containsValue(SQLiteQueueHash.hash(value), value);
+    }
+
+    public boolean containsBytes(byte[] value) {
+        return containsValue(SQLiteQueueHash.hash(value), value);
+    }
+
+    private boolean containsValue(long hash, Object value) {
+        return mDb.queryForLong("SELECT 1 FROM " + mTableName + " WHERE " + SELECTION_VALUE + " LIMIT 1",
+                0, hash, value) > 0;
     }
 
+    /**
+     * Removes and returns the head of the queue, or null if the queue is empty.
+     * <p>
+     * The head row is read and deleted inside one transaction, so two consumers can never
+     * both receive the same row.
+     */
     public String removeHead() {
-        String[] projection = {
-                SQLiteQueueTable.COLUMN_NAME_VALUE
-        };
-
-        String selection = SQLiteQueueTable._ID + " = ?";
-        String[] selectionArgs = {
-                String.valueOf(getMinId())
-        };
-
-        Cursor c = mDb.query(
-                SQLiteQueueTable.TABLE_NAME,
-                projection,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                null
-        );
-        c.moveToFirst();
-        if (c.getCount() == 0) {
-            c.close();
-            return null;
+        List<String> head = removeHead(1);
+        return head.isEmpty() ? null : head.get(0);
+    }
+
+    /**
+     * Removes and returns the head row, or null if the queue is empty.
+     */
+    public SQLiteQueueEntry removeHeadEntry() {
+        List<SQLiteQueueEntry> head = removeHeadEntries(1);
+        return head.isEmpty() ? null : head.get(0);
+    }
+
+    /**
+     * Removes and returns up to {@code maxCount} rows from the head of the queue, in queue order.
+     * <p>
+     * The rows are selected in head order and then deleted, both inside a single transaction. In
+     * id order the delete is a single id range.
+     */
+    public List<String> removeHead(int maxCount) {
+        List<SQLiteQueueEntry> entries = removeHeadEntries(maxCount);
+        List<String> values = new ArrayList<>(entries.size());
+        for (SQLiteQueueEntry entry : entries) {
+            values.add(entry.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * The entry counterpart of {@link #removeHead(int)}, for text and blob tables alike.
+     */
+    public List<SQLiteQueueEntry> removeHeadEntries(int maxCount) {
+        return removeHeadEntries(maxCount, "");
+    }
+
+    /**
+     * Like {@link #removeHeadEntries(int)}, only considering rows whose order key is at most
+     * {@code maxOrderKey}. Rows with a larger key stay in the table even if they are older.
+     *
+     * @throws IllegalStateException if the table has no order column.
+     */
+    public List<SQLiteQueueEntry> removeHeadEntries(int maxCount, long maxOrderKey) {
+        return removeHeadEntries(maxCount, " WHERE " + checkOrderColumn() + " <= " + maxOrderKey);
+    }
+
+    private List<SQLiteQueueEntry> removeHeadEntries(int maxCount, String where) {
+        return moveHeadEntries(maxCount, where, null);
+    }
+
+    /**
+     * Leases up to {@code maxCount} rows from the head of the queue: in one transaction they are
+     * moved to the in-flight table, stamped with the lease expiry and token, where they stay until
+     * they are {@link #ack(long, long) acked}, {@link #nack(long, long) nacked} or their lease runs
+     * out. Expired leases are reclaimed first.
+     */
+    public List<SQLiteQueueEntry> leaseHeadEntries(int maxCount, long leaseExpiresAt, long leaseToken) {
+        return leaseHeadEntries(maxCount, "", leaseExpiresAt, leaseToken);
+    }
+
+    /**
+     * Like {@link #leaseHeadEntries(int, long, long)}, only considering rows whose order key is at
+     * most {@code maxOrderKey}.
+     *
+     * @throws IllegalStateException if the table has no order column.
+     */
+    public List<SQLiteQueueEntry> leaseHeadEntries(int maxCount, long maxOrderKey, long leaseExpiresAt,
+                                                   long leaseToken) {
+        return leaseHeadEntries(maxCount, " WHERE " + checkOrderColumn() + " <= " + maxOrderKey,
+                leaseExpiresAt, leaseToken);
+    }
+
+    private List<SQLiteQueueEntry> leaseHeadEntries(int maxCount, String where, long leaseExpiresAt,
+                                                    long leaseToken) {
+        mDb.beginTransaction();
+        try {
+            reclaimExpiredLeases(System.currentTimeMillis());
+            List<SQLiteQueueEntry> entries = moveHeadEntries(maxCount, where, leaseExpiresAt + COMMA_SEP + leaseToken);
+            mDb.setTransactionSuccessful();
+            return entries;
+        } finally {
+            mDb.endTransaction();
         }
-        String value = c.getString(c.getColumnIndex(SQLiteQueueTable.COLUMN_NAME_VALUE));
-        c.close();
-        mDb.delete(SQLiteQueueTable.TABLE_NAME, selection, selectionArgs);
-        return value;
+    }
+
+    /**
+     * Removes the head slice in one transaction, first copying it to the in-flight table along
+     * with the given lease columns unless they are null.
+     */
+    private List<SQLiteQueueEntry> moveHeadEntries(int maxCount, String where, String leaseValues) {
+        if (maxCount <= 0)
+            return new ArrayList<>(0);
+        mDb.beginTransaction();
+        try {
+            List<SQLiteQueueEntry> entries = mDb.queryEntries(
+                    mSqlSelectEntries + where + mSqlHeadOrder + " LIMIT " + maxCount, mBlobValues);
+            if (entries.isEmpty())
+                return entries;
+            String slice;
+            if (mOrderColumn == null) {
+                slice = SQLiteQueueTable._ID + " <= " + entries.get(entries.size() - 1).getId();
+            } else {
+                // The head is not an id range here, so delete the same ordered slice that was
+                // just read. Nothing can write in between since the transaction is exclusive.
+                slice = SQLiteQueueTable._ID + " IN (SELECT " + SQLiteQueueTable._ID + " FROM " +
+                        mTableName + where + mSqlHeadOrder + " LIMIT " + entries.size() + ")";
+            }
+            if (leaseValues != null) {
+                mDb.execSQL("INSERT INTO " + mInFlightTableName + " (" + mRowColumns + COMMA_SEP +
+                        SQLiteQueueTable.COLUMN_NAME_LEASE_EXPIRES_AT + COMMA_SEP +
+                        SQLiteQueueTable.COLUMN_NAME_LEASE_TOKEN + ") SELECT " + mRowColumns + COMMA_SEP +
+                        leaseValues + " FROM " + mTableName + " WHERE " + slice);
+            }
+            int deleted = mDb.executeUpdateDelete(mSqlDelete + slice);
+            mDb.setTransactionSuccessful();
+            mCount.addAndGet(-deleted);
+            return entries;
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * Settles a leased row for good.
+     *
+     * @return false if the lease is unknown, expired and reclaimed, or already settled.
+     */
+    public boolean ack(long id, long leaseToken) {
+        return mDb.executeUpdateDelete("DELETE FROM " + mInFlightTableName + " WHERE " + SELECTION_LEASE,
+                id, leaseToken) > 0;
+    }
+
+    /**
+     * Settles every row still held under the given lease token, in one statement.
+     *
+     * @return the number of rows settled.
+     */
+    public int ackAll(long leaseToken) {
+        return mDb.executeUpdateDelete("DELETE FROM " + mInFlightTableName + " WHERE " +
+                SQLiteQueueTable.COLUMN_NAME_LEASE_TOKEN + " = ?", leaseToken);
+    }
+
+    /**
+     * Gives a leased row back to the queue, where it takes its old place.
+     *
+     * @return false if the lease is unknown, expired and reclaimed, or already settled.
+     */
+    public boolean nack(long id, long leaseToken) {
+        mDb.beginTransaction();
+        try {
+            mDb.execSQL("INSERT INTO " + mTableName + " (" + mRowColumns + ") SELECT " + mRowColumns +
+                    " FROM " + mInFlightTableName + " WHERE " + SELECTION_LEASE, id, leaseToken);
+            int returned = mDb.executeUpdateDelete("DELETE FROM " + mInFlightTableName + " WHERE " +
+                    SELECTION_LEASE, id, leaseToken);
+            mDb.setTransactionSuccessful();
+            mCount.addAndGet(returned);
+            return returned > 0;
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * Gives every row whose lease ran out by {@code now} back to the queue.
+     *
+     * @return the number of rows reclaimed.
+     */
+    public int reclaimExpiredLeases(long now) {
+        String expired = SQLiteQueueTable.COLUMN_NAME_LEASE_EXPIRES_AT + " <= " + now;
+        mDb.beginTransaction();
+        try {
+            mDb.execSQL("INSERT INTO " + mTableName + " (" + mRowColumns + ") SELECT " + mRowColumns +
+                    " FROM " + mInFlightTableName + " WHERE " + expired);
+            int reclaimed = mDb.executeUpdateDelete("DELETE FROM " + mInFlightTableName + " WHERE " + expired);
+            mDb.setTransactionSuccessful();
+            mCount.addAndGet(reclaimed);
+            return reclaimed;
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    /**
+     * Returns the number of leased rows, expired or not.
+     */
+    public int getInFlightCount() {
+        return (int) mDb.queryForLong("SELECT COUNT(*) FROM " + mInFlightTableName, 0);
+    }
+
+    /**
+     * Returns the lowest order key in the table, read from the order index, or
+     * {@link Long#MAX_VALUE} if the table is empty.
+     *
+     * @throws IllegalStateException if the table has no order column.
+     */
+    public long getHeadOrderKey() {
+        String sql = "SELECT " + checkOrderColumn() + " FROM " + mTableName + mSqlHeadOrder + " LIMIT 1";
+        return mDb.queryForLong(sql, Long.MAX_VALUE);
     }
 
     public String remove(String s) {
-        String selection = SQLiteQueueTable.COLUMN_NAME_VALUE + " = ?";
-        String[] selectionArgs = {
-                s
-        };
-        int count = mDb.delete(SQLiteQueueTable.TABLE_NAME, selection, selectionArgs);
-        if (count > 0)
+        int count = mDb.executeUpdateDelete(mSqlDelete + SELECTION_VALUE, SQLiteQueueHash.hash(s), s);
+        if (count > 0) {
+            mCount.addAndGet(-count);
             return s;
-        else
-            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Removes every row holding the given bytes.
+     *
+     * @return true if at least one row was removed.
+     */
+    public boolean removeBytes(byte[] value) {
+        int count = mDb.executeUpdateDelete(mSqlDelete + SELECTION_VALUE, SQLiteQueueHash.hash(value), value);
+        mCount.addAndGet(-count);
+        return count > 0;
+    }
+
+    /**
+     * Removes the row with the given id.
+     *
+     * @return true if the row existed.
+     */
+    public boolean remove(long id) {
+        int count = mDb.executeUpdateDelete(mSqlDelete + SELECTION_ID, id);
+        mCount.addAndGet(-count);
+        return count > 0;
+    }
+
+    private String headQuery(int limit) {
+        return mSqlSelectEntries + mSqlHeadOrder + " LIMIT " + limit;
     }
 
-    private long getMinId() {
-        String sql = "SELECT " + "MIN(" + SQLiteQueueTable._ID + ")"
-                + " FROM " + SQLiteQueueTable.TABLE_NAME;
-        Cursor c = mDb.rawQuery(sql, null);
-        c.moveToFirst();
-        long minId = c.getLong(0);
-        c.close();
-        return minId;
+    private static void bindValueAndHash(SQLiteQueueStorage.Statement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+            statement.bindNull(index + 1);
+        } else if (value instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) value);
+            statement.bindLong(index + 1, SQLiteQueueHash.hash((byte[]) value));
+        } else {
+            statement.bindString(index, (String) value);
+            statement.bindLong(index + 1, SQLiteQueueHash.hash((String) value));
+        }
     }
 
     public long getMaxId() {
         String sql = "SELECT " + "MAX(" + SQLiteQueueTable._ID + ")"
-                + " FROM " + SQLiteQueueTable.TABLE_NAME;
-        Cursor c = mDb.rawQuery(sql, null);
-        c.moveToFirst();
-        long maxId = c.getLong(0);
-        c.close();
-        return maxId;
+                + " FROM " + mTableName;
+        return mDb.queryForLong(sql, 0);
+    }
+
+    /**
+     * Returns the size of the database file in bytes, not counting a write-ahead log.
+     */
+    public long getDatabaseSize() {
+        return mDb.queryForLong("PRAGMA page_count", 0) * mDb.queryForLong("PRAGMA page_size", 0);
     }
 
+    /**
+     * Closes the database, or releases this manager's reference on it if it is shared. Calling it
+     * again has no effect.
+     */
     @Override
     public void close() throws IOException {
-        mDb.close();
+        if (mClosed.compareAndSet(false, true))
+            mDb.close();
     }
 }
@@ -7,5 +7,44 @@ import android.provider.BaseColumns;
  */
 public class SQLiteQueueTable implements BaseColumns {
     public static final String TABLE_NAME = "sqlitequeue";
+    /**
+     * The table backing queues of binary payloads, its value column is a BLOB.
+     */
+    public static final String BLOB_TABLE_NAME = "sqlitequeue_blob";
+    /**
+     * The tables backing priority queues, text and binary. They are created on first use.
+     */
+    public static final String PRIORITY_TABLE_NAME = "sqlitequeue_priority";
+    public static final String PRIORITY_BLOB_TABLE_NAME = "sqlitequeue_priority_blob";
+    /**
+     * The tables backing delay queues, text and binary. They are created on first use.
+     */
+    public static final String DELAY_TABLE_NAME = "sqlitequeue_delay";
+    public static final String DELAY_BLOB_TABLE_NAME = "sqlitequeue_delay_blob";
+    /**
+     * Appended to a queue table's name to get the table holding its leased rows.
+     */
+    public static final String IN_FLIGHT_TABLE_SUFFIX = "_inflight";
     public static final String COLUMN_NAME_VALUE = "value";
+    public static final String COLUMN_NAME_VALUE_HASH = "value_hash";
+    /**
+     * The order column of priority tables, lower priorities are dequeued first.
+     */
+    public static final String COLUMN_NAME_PRIORITY = "priority";
+    /**
+     * The order column of delay tables, the wall clock time in milliseconds from which a row may
+     * be dequeued.
+     */
+    public static final String COLUMN_NAME_VISIBLE_AT = "visible_at";
+    /**
+     * The wall clock time in milliseconds at which the lease on an in-flight row runs out.
+     */
+    public static final String COLUMN_NAME_LEASE_EXPIRES_AT = "lease_expires_at";
+    /**
+     * Identifies one lease of an in-flight row, so a lease that expired cannot settle the row
+     * once it has been leased again.
+     */
+    public static final String COLUMN_NAME_LEASE_TOKEN = "lease_token";
+    public static final String INDEX_NAME_VALUE_HASH = TABLE_NAME + "_" + COLUMN_NAME_VALUE_HASH + "_idx";
+    public static final String BLOB_INDEX_NAME_VALUE_HASH = BLOB_TABLE_NAME + "_" + COLUMN_NAME_VALUE_HASH + "_idx";
 }
@@ -0,0 +1,91 @@
+package com.talview.sqlitepersistentqueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SQLitePersistentLogQueueTest {
+    private QueueObjectConverter<String> mConverter = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    private File directory;
+    private SQLitePersistentLogQueue<String> queue;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("queue", ".log");
+        assertTrue(directory.delete());
+        queue = new SQLitePersistentLogQueue<>(directory, mConverter);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(directory.delete());
+    }
+
+    @Test
+    public void offerAndPoll_KeepFifoOrder() {
+        queue.offer("a");
+        queue.addAll(Arrays.asList("b", "c"));
+        assertEquals(3, queue.size());
+        assertEquals("a", queue.peek());
+        assertEquals("a", queue.poll());
+        assertEquals(Arrays.asList("b", "c"), queue.pollBatch(10));
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void reopen_KeepsElements() throws IOException {
+        queue.addAll(Arrays.asList("a", "b", "c"));
+        queue.poll();
+        queue.close();
+        queue = new SQLitePersistentLogQueue<>(directory, mConverter);
+        List<String> drained = new ArrayList<>();
+        assertEquals(2, queue.drainTo(drained));
+        assertEquals(Arrays.asList("b", "c"), drained);
+    }
+
+    @Test
+    public void iteratorAndContains_WalkTheLog() {
+        queue.addAll(Arrays.asList("a", "b", "c"));
+        List<String> elements = new ArrayList<>();
+        for (String e : queue) {
+            elements.add(e);
+        }
+        assertEquals(Arrays.asList("a", "b", "c"), elements);
+        assertTrue(queue.contains("b"));
+        queue.clear();
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void offer_RejectsNull() {
+        queue.offer(null);
+    }
+}
@@ -0,0 +1,138 @@
+package com.talview.sqlitepersistentqueue;
+
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueJdbcStorage;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueSchema;
+import com.talview.sqlitepersistentqueue.db.SQLiteQueueTableManager;
+import com.talview.sqlitepersistentqueue.db.sqlite_queue_contract.SQLiteQueueTable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the queue on a plain JVM, over a JDBC connection instead of an Android database.
+ */
+public class SQLitePersistentQueueJdbcTest {
+    private QueueObjectConverter<String> mConverter = new QueueObjectConverter<String>() {
+        @Override
+        public String deserialize(String value) {
+            return value;
+        }
+
+        @Override
+        public String serialize(String queueObject) {
+            return queueObject;
+        }
+    };
+
+    private File dbFile;
+    private SQLiteQueueJdbcStorage storage;
+    private SQLitePersistentQueue<String> queue;
+
+    @Before
+    public void setUp() throws IOException, SQLException {
+        dbFile = File.createTempFile("queue", ".db");
+        queue = new SQLitePersistentQueue<>(mConverter, openTable());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.close();
+        assertTrue(dbFile.delete());
+    }
+
+    private SQLiteQueueTableManager openTable() throws SQLException {
+        storage = new SQLiteQueueJdbcStorage(
+                DriverManager.getConnection("jdbc:sqlite:" + dbFile.getPath()));
+        SQLiteQueueSchema.createQueueTable(storage, SQLiteQueueTable.TABLE_NAME, false);
+        return new SQLiteQueueTableManager(storage, SQLiteQueueTable.TABLE_NAME, false);
+    }
+
+    @Test
+    public void offerAndPoll_KeepFifoOrder() {
+        queue.addAll(Arrays.asList("value1", "value2"));
+        queue.offer("value3");
+        assertEquals(3, queue.size());
+        assertTrue(queue.contains("value2"));
+        assertEquals("value1", queue.poll());
+        assertEquals("value2", queue.peek());
+        assertTrue(queue.remove("value2"));
+        assertEquals("value3", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void addAll_FailedBatch_PublishesTheCommittedOnes() {
+        queue.setInsertBatchSize(2);
+        final List<String> added = new ArrayList<>();
+        queue.getEventBus().subscribe(new SQLiteBatchBusSubscriber<String>() {
+            @Override
+            public void onAddedAll(List<String> objects) {
+                added.addAll(objects);
+            }
+
+            @Override
+            public void onRemovedAll(List<String> objects) {
+            }
+
+            @Override
+            public void onAdded(String object) {
+                added.add(object);
+            }
+
+            @Override
+            public void onRemoved(String object) {
+            }
+
+            @Override
+            public void onCleared() {
+            }
+        });
+        storage.execSQL("CREATE TRIGGER reject BEFORE INSERT ON " + SQLiteQueueTable.TABLE_NAME +
+                " WHEN NEW.value = 'bad' BEGIN SELECT RAISE(ABORT, 'rejected'); END");
+        try {
+            queue.addAll(Arrays.asList("value1", "value2", "value3", "bad"));
+            fail("Must throw when an element cannot be stored");
+        } catch (RuntimeException expected) {
+            assertTrue(expected.getCause().getCause() instanceof SQLException);
+        }
+        assertEquals(Arrays.asList("value1", "value2"), added);
+        assertEquals(2, queue.size());
+        assertEquals("value1", queue.poll());
+    }
+
+    @Test
+    public void elements_SurviveReopening() throws IOException, SQLException {
+        queue.addAll(Arrays.asList("value1", "value2"));
+        queue.close();
+        queue = new SQLitePersistentQueue<>(mConverter, openTable());
+        assertEquals(2, queue.size());
+        assertEquals("value1", queue.poll());
+    }
+
+    @Test
+    public void reserve_NackedElements_AreDeliveredAgain() {
+        queue.add("value1");
+        List<SQLiteQueueLease<String>> leases = queue.reserve(1, 1, TimeUnit.MINUTES);
+        assertEquals(1, leases.size());
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.nack(leases.get(0)));
+        assertFalse(queue.isEmpty());
+        assertEquals("value1", queue.poll());
+    }
+}
@@ -0,0 +1,65 @@
+package com.talview.sqlitepersistentqueue;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the latency histogram.
+ */
+public class SQLiteQueueLatencyHistogramTest {
+    @Test
+    public void empty_ReportsZero() {
+        SQLiteQueueLatencyHistogram histogram = new SQLiteQueueLatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMeanNanos(), 0);
+    }
+
+    @Test
+    public void percentiles_AreWithinTheBucketPrecision() {
+        SQLiteQueueLatencyHistogram histogram = new SQLiteQueueLatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000000, histogram.getMaxNanos());
+        assertEquals(500500, histogram.getMeanNanos(), 0.5);
+        assertWithin(500000, histogram.getValueAtPercentile(50));
+        assertWithin(990000, histogram.getValueAtPercentile(99));
+        assertEquals(1000000, histogram.getValueAtPercentile(100));
+        assertWithin(1000, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void buckets_CoverTheirValues() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 1000, 123456789L, 1L << 44}) {
+            int bucket = SQLiteQueueLatencyHistogram.bucketOf(value);
+            assertTrue(value <= SQLiteQueueLatencyHistogram.highestValueOf(bucket));
+            assertTrue(bucket == 0 || value > SQLiteQueueLatencyHistogram.highestValueOf(bucket - 1));
+        }
+    }
+
+    @Test
+    public void hugeValues_GoToTheLastBucket() {
+        SQLiteQueueLatencyHistogram histogram = new SQLiteQueueLatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void percentileOutOfRange_MustThrow() {
+        try {
+            new SQLiteQueueLatencyHistogram().getValueAtPercentile(101);
+            fail("Must throw for a percentile above 100");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + ", was " + actual,
+                Math.abs(actual - expected) <= expected * 0.035);
+    }
+}
@@ -0,0 +1,59 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the queue database configuration.
+ */
+public class SQLiteQueueConfigTest {
+    @Test
+    public void builderDefaults_AreTheHighThroughputProfile() {
+        SQLiteQueueConfig config = new SQLiteQueueConfig.Builder().build();
+        assertTrue(config.isWriteAheadLoggingEnabled());
+        assertEquals(Arrays.asList("PRAGMA synchronous = 1", "PRAGMA temp_store = 2"),
+                config.getConnectionPragmas());
+    }
+
+    @Test
+    public void platformDefaults_ChangeNothing() {
+        assertFalse(SQLiteQueueConfig.PLATFORM_DEFAULTS.isWriteAheadLoggingEnabled());
+        assertTrue(SQLiteQueueConfig.PLATFORM_DEFAULTS.getConnectionPragmas().isEmpty());
+        assertEquals(SQLiteQueueConfig.UNSET, SQLiteQueueConfig.PLATFORM_DEFAULTS.getPageSize());
+    }
+
+    @Test
+    public void cacheSize_IsPassedThrough() {
+        SQLiteQueueConfig config = new SQLiteQueueConfig.Builder()
+                .setSynchronous(SQLiteQueueConfig.SYNCHRONOUS_FULL)
+                .setCacheSize(-2000)
+                .setTempStore(SQLiteQueueConfig.UNSET)
+                .build();
+        assertEquals(Arrays.asList("PRAGMA synchronous = 2", "PRAGMA cache_size = -2000"),
+                config.getConnectionPragmas());
+    }
+
+    @Test
+    public void setPageSize_MustThrowForNonPowerOfTwo() {
+        try {
+            new SQLiteQueueConfig.Builder().setPageSize(3000);
+            fail("Must throw for a page size that is not a power of two");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void setSynchronous_MustThrowForUnknownLevel() {
+        try {
+            new SQLiteQueueConfig.Builder().setSynchronous(3);
+            fail("Must throw for an unknown synchronous level");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Unit tests for the persisted value hash.
+ */
+public class SQLiteQueueHashTest {
+    @Test
+    public void hash_OfEmptyString_IsTheOffsetBasis() {
+        assertEquals(0xcbf29ce484222325L, SQLiteQueueHash.hash(""));
+    }
+
+    @Test
+    public void hash_IsStableForEqualStrings() {
+        assertEquals(SQLiteQueueHash.hash("{\"id\":1}"), SQLiteQueueHash.hash(new String("{\"id\":1}")));
+    }
+
+    @Test
+    public void hash_DiffersForDifferentStrings() {
+        assertNotEquals(SQLiteQueueHash.hash("value1"), SQLiteQueueHash.hash("value2"));
+        assertNotEquals(SQLiteQueueHash.hash("ab"), SQLiteQueueHash.hash("ba"));
+    }
+
+    @Test
+    public void hash_OfBytes_IsStableAndOrderSensitive() {
+        assertEquals(0xcbf29ce484222325L, SQLiteQueueHash.hash(new byte[0]));
+        assertEquals(SQLiteQueueHash.hash(new byte[]{1, 2}), SQLiteQueueHash.hash(new byte[]{1, 2}));
+        assertNotEquals(SQLiteQueueHash.hash(new byte[]{1, 2}), SQLiteQueueHash.hash(new byte[]{2, 1}));
+    }
+}
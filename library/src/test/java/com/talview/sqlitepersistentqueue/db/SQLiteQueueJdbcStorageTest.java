@@ -0,0 +1,161 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for the JDBC storage and the table manager running on it, against an in-memory
+ * database.
+ */
+public class SQLiteQueueJdbcStorageTest {
+    private static final String TABLE = "jdbcqueue";
+    private static final String BLOB_TABLE = "jdbcqueue_blob";
+
+    private SQLiteQueueJdbcStorage storage;
+
+    @Before
+    public void setUp() throws SQLException {
+        storage = new SQLiteQueueJdbcStorage(DriverManager.getConnection("jdbc:sqlite::memory:"));
+        SQLiteQueueSchema.createQueueTable(storage, TABLE, false);
+        SQLiteQueueSchema.createQueueTable(storage, BLOB_TABLE, true);
+    }
+
+    @After
+    public void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    public void executeInsert_ReturnsTheRowId() {
+        long first = storage.executeInsert("INSERT INTO " + TABLE + " (value) VALUES (?)", "a");
+        long second = storage.executeInsert("INSERT INTO " + TABLE + " (value) VALUES (?)", "b");
+        assertEquals(first + 1, second);
+        assertEquals(2, storage.queryForLong("SELECT COUNT(*) FROM " + TABLE, -1));
+    }
+
+    @Test
+    public void queryForLong_NoRow_ReturnsTheDefault() {
+        assertEquals(42, storage.queryForLong("SELECT _id FROM " + TABLE + " LIMIT 1", 42));
+    }
+
+    @Test
+    public void nestedTransaction_NotSuccessful_RollsBackTheOuterOne() {
+        storage.beginTransaction();
+        try {
+            storage.executeInsert("INSERT INTO " + TABLE + " (value) VALUES (?)", "a");
+            storage.beginTransaction();
+            try {
+                storage.executeInsert("INSERT INTO " + TABLE + " (value) VALUES (?)", "b");
+            } finally {
+                storage.endTransaction();
+            }
+            storage.setTransactionSuccessful();
+        } finally {
+            storage.endTransaction();
+        }
+        assertEquals(0, storage.queryForLong("SELECT COUNT(*) FROM " + TABLE, -1));
+    }
+
+    @Test
+    public void config_IsAppliedToTheConnection() throws SQLException {
+        SQLiteQueueJdbcStorage configured = new SQLiteQueueJdbcStorage(
+                DriverManager.getConnection("jdbc:sqlite::memory:"),
+                new SQLiteQueueConfig.Builder()
+                        .setSynchronous(SQLiteQueueConfig.SYNCHRONOUS_OFF)
+                        .setPageSize(8192)
+                        .build());
+        try {
+            assertEquals(SQLiteQueueConfig.SYNCHRONOUS_OFF, configured.queryForLong("PRAGMA synchronous", -1));
+            assertEquals(8192, configured.queryForLong("PRAGMA page_size", -1));
+        } finally {
+            configured.close();
+        }
+    }
+
+    @Test
+    public void endTransaction_WithoutBegin_MustThrow() {
+        try {
+            storage.endTransaction();
+            fail("Must throw when no transaction is in progress");
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Test
+    public void execSQL_InvalidStatement_MustThrow() {
+        try {
+            storage.execSQL("NOT SQL");
+            fail("Must throw on an invalid statement");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+    }
+
+    @Test
+    public void tableManager_RoundTripsTextRows() {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(storage, TABLE, false);
+        assertEquals(2, manager.insertAll(Arrays.asList("value1", "value2"), 10));
+        manager.insert("value3");
+        assertEquals(3, manager.getCount());
+        assertTrue(manager.contains("value2"));
+        assertTrue(manager.remove("value2") != null);
+        assertFalse(manager.contains("value2"));
+        List<SQLiteQueueEntry> head = manager.removeHeadEntries(5);
+        assertEquals(2, head.size());
+        assertEquals("value1", head.get(0).getValue());
+        assertEquals("value3", head.get(1).getValue());
+        assertTrue(manager.removeHeadEntries(1).isEmpty());
+        assertEquals(0, manager.getCount());
+    }
+
+    @Test
+    public void tableManager_FailedInsert_KeepsEarlierBatchesOnly() {
+        storage.execSQL("CREATE TRIGGER reject BEFORE INSERT ON " + TABLE + " WHEN NEW.value = 'bad' " +
+                "BEGIN SELECT RAISE(ABORT, 'rejected'); END");
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(storage, TABLE, false);
+        try {
+            manager.insertAll(Arrays.asList("value1", "value2", "value3", "bad", "value5"), 2);
+            fail("A failed insert must throw");
+        } catch (SQLiteQueueInsertException e) {
+            assertEquals(2, e.getInsertedCount());
+            assertTrue(e.getCause().getCause() instanceof SQLException);
+        }
+        assertEquals(2, manager.getCount());
+        assertEquals(2, storage.queryForLong("SELECT COUNT(*) FROM " + TABLE, -1));
+        assertEquals(1, manager.insertAll(Arrays.asList("value3"), 2));
+    }
+
+    @Test
+    public void tableManager_NackedLease_ReturnsTheRowToTheHead() {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(storage, TABLE, false);
+        manager.insertAll(Arrays.asList("value1", "value2"), 10);
+        List<SQLiteQueueEntry> leased = manager.leaseHeadEntries(1, Long.MAX_VALUE, 7);
+        assertEquals(1, manager.getInFlightCount());
+        assertEquals("value2", manager.getHead());
+        assertTrue(manager.nack(leased.get(0).getId(), 7));
+        assertEquals(0, manager.getInFlightCount());
+        assertEquals("value1", manager.getHead());
+    }
+
+    @Test
+    public void tableManager_RoundTripsBlobRows() {
+        SQLiteQueueTableManager manager = new SQLiteQueueTableManager(storage, BLOB_TABLE, true);
+        byte[] value = {0, 1, 2, (byte) 0xff};
+        manager.insertBytes(value);
+        assertTrue(manager.containsBytes(value));
+        assertArrayEquals(value, manager.removeHeadEntries(1).get(0).getBytes());
+        assertFalse(manager.containsBytes(value));
+    }
+}
@@ -0,0 +1,160 @@
+package com.talview.sqlitepersistentqueue.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SQLiteQueueSegmentLogTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final SQLiteQueueLogConfig SMALL_SEGMENTS = new SQLiteQueueLogConfig.Builder()
+            .setSegmentSize(64)
+            .build();
+
+    private File directory;
+    private SQLiteQueueSegmentLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("queue", ".log");
+        assertTrue(directory.delete());
+        log = new SQLiteQueueSegmentLog(directory, SMALL_SEGMENTS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        log.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(directory.delete());
+    }
+
+    private static byte[] record(int i) {
+        return ("record-" + i).getBytes(UTF_8);
+    }
+
+    private int segmentCount() {
+        return directory.list().length - 1;
+    }
+
+    private void reopen() throws IOException {
+        log.close();
+        log = new SQLiteQueueSegmentLog(directory, SMALL_SEGMENTS);
+    }
+
+    @Test
+    public void poll_ReturnsRecordsInAppendOrder() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            log.append(record(i));
+        }
+        assertEquals(20, log.size());
+        assertArrayEquals(record(0), log.peek());
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(record(i), log.poll());
+        }
+        assertNull(log.poll());
+        assertTrue(log.isEmpty());
+    }
+
+    @Test
+    public void appendAll_RollsSegmentsAndPollDeletesConsumedOnes() throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            records.add(record(i));
+        }
+        log.appendAll(records);
+        assertTrue(segmentCount() > 1);
+
+        List<byte[]> polled = log.poll(19);
+        assertEquals(19, polled.size());
+        assertArrayEquals(record(18), polled.get(18));
+        assertEquals(1, segmentCount());
+        assertArrayEquals(record(19), log.poll());
+    }
+
+    @Test
+    public void reopen_KeepsHeadAndTail() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            log.append(record(i));
+        }
+        log.poll(7);
+        reopen();
+        assertEquals(13, log.size());
+        assertArrayEquals(record(7), log.poll());
+        log.append(record(20));
+        reopen();
+        assertEquals(13, log.size());
+        assertArrayEquals(record(8), log.peek());
+    }
+
+    @Test
+    public void reopen_CutsOffTornRecord() throws IOException {
+        log.append(record(0));
+        log.append(record(1));
+        log.close();
+        File segment = new File(directory, String.format("%020d", 0) + SQLiteQueueLogSegment.SUFFIX);
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            file.setLength(file.length() - 2);
+        } finally {
+            file.close();
+        }
+        log = new SQLiteQueueSegmentLog(directory, SMALL_SEGMENTS);
+        assertEquals(1, log.size());
+        log.append(record(2));
+        assertArrayEquals(record(0), log.poll());
+        assertArrayEquals(record(2), log.poll());
+    }
+
+    @Test
+    public void clear_RemovesEverythingAndKeepsOneSegment() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            log.append(record(i));
+        }
+        log.clear();
+        assertTrue(log.isEmpty());
+        assertEquals(1, segmentCount());
+        log.clear();
+        log.append(record(20));
+        reopen();
+        assertEquals(1, log.size());
+        assertArrayEquals(record(20), log.poll());
+    }
+
+    @Test
+    public void iterator_SkipsPolledRecordsAndSeesAppendedOnes() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            log.append(record(i));
+        }
+        Iterator<byte[]> iterator = log.iterator();
+        assertArrayEquals(record(0), iterator.next());
+        log.poll(5);
+        log.append(record(10));
+        List<byte[]> rest = new ArrayList<>();
+        while (iterator.hasNext()) {
+            rest.add(iterator.next());
+        }
+        assertEquals(6, rest.size());
+        assertArrayEquals(record(5), rest.get(0));
+        assertArrayEquals(record(10), rest.get(5));
+        assertFalse(Arrays.equals(record(0), log.peek()));
+    }
+}